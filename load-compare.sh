@@ -0,0 +1,92 @@
+#!/bin/bash
+
+# Load comparison: platform threads vs virtual threads
+# Starts the packaged application once per mode against the running RabbitMQ/Oracle
+# environment, drives concurrent HTTP load and samples thread and memory metrics
+# from the actuator. With virtual threads the JFR pinning reporter is switched on,
+# so JDBC pinning hotspots show up in the application log (load-compare-virtual.log).
+#
+# Usage: ./load-compare.sh [concurrency] [requests]
+# Requires: curl, and optionally hey (https://github.com/rakyll/hey) for load generation
+
+set -e
+
+CONCURRENCY=${1:-200}
+REQUESTS=${2:-20000}
+PORT=${PORT:-8090}
+BASE_URL="http://localhost:${PORT}"
+JAR=$(ls target/rabbitmqavanzado-*.jar 2>/dev/null | grep -v original | head -1)
+
+if [ -z "$JAR" ]; then
+    echo "No application jar in target/, run ./mvnw -DskipTests package first"
+    exit 1
+fi
+
+metric() {
+    # Prints the first measurement value of an actuator metric
+    curl -s "${BASE_URL}/actuator/metrics/$1" | sed -n 's/.*"value":\([0-9.E+-]*\).*/\1/p' | head -1
+}
+
+wait_for_app() {
+    for _ in $(seq 1 90); do
+        if curl -s "${BASE_URL}/actuator/health" > /dev/null 2>&1; then
+            return 0
+        fi
+        sleep 1
+    done
+    echo "Application did not start, see $1"
+    return 1
+}
+
+drive_load() {
+    local url="${BASE_URL}/api/monitoring/products/active"
+    if command -v hey > /dev/null 2>&1; then
+        hey -n "$REQUESTS" -c "$CONCURRENCY" "$url" | grep -E "Requests/sec|Average|99% in"
+    else
+        local start end
+        start=$(date +%s.%N)
+        seq 1 "$REQUESTS" | xargs -P "$CONCURRENCY" -I{} curl -s -o /dev/null "$url"
+        end=$(date +%s.%N)
+        echo "  Requests/sec: $(echo "$REQUESTS / ($end - $start)" | bc -l | cut -c1-8)"
+    fi
+}
+
+run_mode() {
+    local mode=$1 virtual=$2
+    local log="load-compare-${mode}.log"
+    echo "=== ${mode} threads ==="
+    java -XX:StartFlightRecording=filename="load-compare-${mode}.jfr",settings=profile \
+        -jar "$JAR" --server.port="$PORT" \
+        --spring.threads.virtual.enabled="$virtual" \
+        --virtual-threads.pinning-report.enabled="$virtual" \
+        > "$log" 2>&1 &
+    local pid=$!
+    wait_for_app "$log"
+
+    drive_load &
+    local load_pid=$!
+    local peak_threads=0 peak_heap=0 threads heap
+    while kill -0 "$load_pid" 2> /dev/null; do
+        threads=$(metric jvm.threads.live)
+        heap=$(metric "jvm.memory.used?tag=area:heap")
+        peak_threads=$(echo "if (${threads:-0} > $peak_threads) ${threads:-0} else $peak_threads" | bc -l)
+        peak_heap=$(echo "if (${heap:-0} > $peak_heap) ${heap:-0} else $peak_heap" | bc -l)
+        sleep 1
+    done
+    wait "$load_pid"
+
+    echo "  Peak live platform threads: ${peak_threads%.*}"
+    echo "  Peak heap used (MB): $(echo "$peak_heap / 1048576" | bc)"
+    echo "  Threads peak (JVM): $(metric jvm.threads.peak)"
+    kill "$pid"
+    wait "$pid" 2> /dev/null || true
+    if [ "$virtual" = "true" ]; then
+        echo "  Pinning report:"
+        grep -E "Pinned|pinned for" "$log" | sort | uniq -c | sort -rn | head -10 || echo "  none"
+    fi
+    echo ""
+}
+
+run_mode platform false
+run_mode virtual true
+echo "JFR recordings: load-compare-platform.jfr, load-compare-virtual.jfr (jfr print --events jdk.VirtualThreadPinned ...)"
@@ -0,0 +1,66 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.converter.CompactBinaryMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+/**
+ * Encode/decode cost of a stock change event with the JSON converter the app
+ * used so far and with the compact binary one. Encoded sizes are printed at setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageConverterBenchmark {
+
+	@Param({ "json", "binary" })
+	String format;
+
+	private MessageConverter converter;
+	private StockChangeEventDTO event;
+	private Message encoded;
+
+	@Setup
+	public void setUp() {
+
+		converter = "json".equals(format) ? new Jackson2JsonMessageConverter() : new CompactBinaryMessageConverter();
+		event = new StockChangeEventDTO(123456L, "Zapatilla Running", "Calzado", 3, 97, new BigDecimal("89970.00"),
+				LocalDateTime.of(2025, 6, 1, 12, 30, 15));
+		encoded = converter.toMessage(event, new MessageProperties());
+		System.out.println(format + " encoded size: " + encoded.getBody().length + " bytes");
+	}
+
+	@Benchmark
+	public Message encode() {
+
+		return converter.toMessage(event, new MessageProperties());
+	}
+
+	@Benchmark
+	public Object decode() {
+
+		return converter.fromMessage(encoded);
+	}
+}
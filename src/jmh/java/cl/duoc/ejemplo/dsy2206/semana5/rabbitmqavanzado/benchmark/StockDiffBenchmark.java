@@ -0,0 +1,87 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockDiffer;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.OffHeapSnapshotStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.OpenAddressingSnapshotStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.StockSnapshotStore;
+
+/**
+ * The diff loop of StockChangeMonitoringService#monitorStockChanges. The database
+ * is replaced by pre-built projection rows; the publishing stage by the event list
+ * the monitor hands to the notification service.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StockDiffBenchmark {
+
+	@Param({ "10000", "100000", "1000000" })
+	int products;
+
+	@Param({ "0.01" })
+	double soldFraction;
+
+	@Param({ "heap", "offheap" })
+	String store;
+
+	private List<StockSnapshotDTO> stocked;
+	private List<StockSnapshotDTO> sold;
+	private StockDiffer differ;
+
+	@Setup
+	public void setUp() {
+
+		SplittableRandom random = new SplittableRandom(42);
+		LocalDateTime updated = LocalDateTime.of(2025, 1, 1, 0, 0);
+		stocked = new ArrayList<>(products);
+		sold = new ArrayList<>(products);
+		for (long id = 1; id <= products; id++) {
+			BigDecimal price = BigDecimal.valueOf(random.nextInt(1_000, 500_000), 2);
+			String category = "category-" + (id % 50);
+			stocked.add(new StockSnapshotDTO(id, "product-" + id, category, 100, price, updated));
+			int quantity = random.nextDouble() < soldFraction ? 100 - random.nextInt(1, 10) : 100;
+			sold.add(new StockSnapshotDTO(id, "product-" + id, category, quantity, price, updated));
+		}
+		StockSnapshotStore snapshot = "heap".equals(store) ? new OpenAddressingSnapshotStore(products)
+				: new OffHeapSnapshotStore(products, null);
+		differ = new StockDiffer(snapshot, null);
+		differ.diff(stocked, new ArrayList<>(), null);
+	}
+
+	/**
+	 * One tick where soldFraction of the catalog decreased, followed by a restock
+	 * tick so every invocation sees the same deltas.
+	 */
+	@Benchmark
+	public List<StockChangeEventDTO> saleTickThenRestock() {
+
+		List<StockChangeEventDTO> events = new ArrayList<>();
+		differ.diff(sold, events, null);
+		differ.diff(stocked, new ArrayList<>(), null);
+		return events;
+	}
+}
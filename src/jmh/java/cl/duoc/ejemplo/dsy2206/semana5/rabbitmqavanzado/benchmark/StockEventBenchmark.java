@@ -0,0 +1,62 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.benchmark;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+
+/**
+ * Per-event costs on the monitor hot path: building StockChangeEventDTO with its
+ * BigDecimal saleTotal, and Product#getPriceChangePercentage.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockEventBenchmark {
+
+	private final BigDecimal price = new BigDecimal("15990.00");
+	private final int quantityChanged = 3;
+	private final Product product = new Product(1L, "Polera", "Algodon", 97, "Ropa", true, new BigDecimal("16990.00"),
+			LocalDateTime.of(2025, 1, 1, 0, 0), new BigDecimal("15990.00"), 4L);
+
+	@Benchmark
+	public BigDecimal saleTotal() {
+
+		return price.multiply(BigDecimal.valueOf(quantityChanged));
+	}
+
+	@Benchmark
+	public StockChangeEventDTO buildEvent() {
+
+		return StockChangeEventDTO.builder()
+				.productId(1L)
+				.productName("Polera")
+				.productCategory("Ropa")
+				.quantityChanged(quantityChanged)
+				.newQuantity(97)
+				.saleTotal(price.multiply(BigDecimal.valueOf(quantityChanged)))
+				.changeTimestamp(LocalDateTime.now())
+				.build();
+	}
+
+	@Benchmark
+	public double priceChangePercentage() {
+
+		return product.getPriceChangePercentage();
+	}
+}
@@ -0,0 +1,19 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Product read caches. Size and TTL come from {@code spring.cache.caffeine.spec};
+ * the caches are declared up front in {@code spring.cache.cache-names} so Actuator
+ * binds their hit, miss and eviction metrics at startup.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+	public static final String PRODUCTS_CACHE = "products";
+	public static final String PRODUCTS_BY_CATEGORY_CACHE = "productsByCategory";
+	public static final String ACTIVE_PRODUCTS_CACHE = "activeProducts";
+	public static final String ACTIVE_PRODUCTS_KEY = "all";
+}
@@ -1,17 +1,30 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.springframework.amqp.core.Binding;
 import org.springframework.amqp.core.BindingBuilder;
+import org.springframework.amqp.core.Declarable;
+import org.springframework.amqp.core.Declarables;
 import org.springframework.amqp.core.DirectExchange;
+import org.springframework.amqp.core.AcknowledgeMode;
 import org.springframework.amqp.core.Queue;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
 import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
 import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+import org.springframework.amqp.support.converter.MessageConverter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.converter.CompactBinaryMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.TieredRetryRecoverer;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.SnapshotHashing;
 
 @Configuration
 public class RabbitMQConfig {
@@ -28,6 +41,36 @@ public class RabbitMQConfig {
 	@Value("${spring.rabbitmq.password:guest}")
 	private String rabbitPassword;
 
+	@Value("${spring.rabbitmq.publisher-confirm-type:none}")
+	private CachingConnectionFactory.ConfirmType publisherConfirmType;
+
+	@Value("${mensaje.consumer.concurrency:4}")
+	private int myQueueConcurrency;
+
+	@Value("${mensaje.consumer.max-concurrency:16}")
+	private int myQueueMaxConcurrency;
+
+	@Value("${mensaje.consumer.prefetch:250}")
+	private int myQueuePrefetch;
+
+	@Value("${spring.threads.virtual.enabled:false}")
+	private boolean virtualThreads;
+
+	@Value("${stock.consumer.batch-size:100}")
+	private int stockConsumerBatchSize;
+
+	@Value("${stock.consumer.receive-timeout:1000}")
+	private long stockConsumerReceiveTimeout;
+
+	@Value("${stock.consumer.concurrency:1}")
+	private int stockConsumerConcurrency;
+
+	@Value("${stock.changes.partitions:0}")
+	private int stockChangePartitions;
+
+	@Value("${rabbitmq.retry.delays-ms:2000,4000}")
+	private long[] retryDelaysMs;
+
 	public static final String MAIN_QUEUE = "myQueue";
 	public static final String DLX_EXCHANGE = "dlx-exchange";
 	public static final String DLX_QUEUE = "dlx-queue";
@@ -47,10 +90,43 @@ public class RabbitMQConfig {
 	public static final String STOCK_CHANGE_DLX = "stock-change-dlx";
 	public static final String STOCK_CHANGE_DLQ = "stock-change-dlq";
 
+	// Partitioned stock changes: stock-changes.p<i> bound to the stock change exchange with stock.change.p<i>
+	public static final String STOCK_CHANGE_PARTITION_PREFIX = ".p";
+
+	// Stock monitor cluster heartbeats (fanout, one anonymous queue per instance)
+	public static final String CLUSTER_EXCHANGE = "stock-monitor-cluster";
+
+	/**
+	 * Partition of a product's stock events. Every event of a product goes to the same
+	 * partition queue, whose single active consumer sees them in publish order (retried
+	 * messages aside).
+	 */
+	public static int stockChangePartition(long productId, int partitions) {
+
+		return (int) Long.remainderUnsigned(SnapshotHashing.mix(productId), partitions);
+	}
+
+	public static String stockChangePartitionQueue(int partition) {
+
+		return STOCK_CHANGE_QUEUE + STOCK_CHANGE_PARTITION_PREFIX + partition;
+	}
+
+	public static String stockChangePartitionRoutingKey(int partition) {
+
+		return STOCK_CHANGE_ROUTING_KEY + STOCK_CHANGE_PARTITION_PREFIX + partition;
+	}
+
+	/**
+	 * JSON stays the default; messages carrying the compact binary content type are
+	 * decoded by {@link CompactBinaryMessageConverter}, so consumers accept both.
+	 */
 	@Bean
-	Jackson2JsonMessageConverter messageConverter() {
+	MessageConverter messageConverter() {
 
-		return new Jackson2JsonMessageConverter();
+		ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(
+				new Jackson2JsonMessageConverter());
+		converter.addDelegate(CompactBinaryMessageConverter.CONTENT_TYPE, new CompactBinaryMessageConverter());
+		return converter;
 	}
 
 	@Bean
@@ -61,6 +137,57 @@ public class RabbitMQConfig {
 		factory.setPort(rabbitPort);
 		factory.setUsername(rabbitUsername);
 		factory.setPassword(rabbitPassword);
+		factory.setPublisherConfirmType(publisherConfirmType);
+		return factory;
+	}
+
+	/**
+	 * Container factory for the myQueue consumer. Acks are manual and batched by the
+	 * listener itself, so the prefetch window bounds how many deliveries are being
+	 * worked on per consumer; failed messages are handed to the retry tiers by the listener.
+	 */
+	@Bean
+	SimpleRabbitListenerContainerFactory myQueueListenerContainerFactory(CachingConnectionFactory connectionFactory,
+			MessageConverter messageConverter) {
+
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		factory.setConnectionFactory(connectionFactory);
+		factory.setMessageConverter(messageConverter);
+		factory.setAcknowledgeMode(AcknowledgeMode.MANUAL);
+		factory.setConcurrentConsumers(myQueueConcurrency);
+		factory.setMaxConcurrentConsumers(myQueueMaxConcurrency);
+		factory.setPrefetchCount(myQueuePrefetch);
+		if (virtualThreads) {
+			// Boot only switches its own default factory to virtual threads
+			factory.setTaskExecutor(new VirtualThreadTaskExecutor("myqueue-consumer-"));
+		}
+		return factory;
+	}
+
+	/**
+	 * Batch container factory for stock-changes: each consumer gathers up to batch-size
+	 * messages, or whatever arrived within receive-timeout, and hands them to the listener
+	 * as one {@code List}. The batch is acked with a single multiple ack after the listener
+	 * returns; the listener hands failed messages to the retry tiers itself, and only a
+	 * batch it cannot settle that way is rejected to the DLQ as a whole.
+	 */
+	@Bean
+	SimpleRabbitListenerContainerFactory stockChangeBatchContainerFactory(CachingConnectionFactory connectionFactory,
+			MessageConverter messageConverter) {
+
+		SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+		factory.setConnectionFactory(connectionFactory);
+		factory.setMessageConverter(messageConverter);
+		factory.setBatchListener(true);
+		factory.setConsumerBatchEnabled(true);
+		factory.setBatchSize(stockConsumerBatchSize);
+		factory.setReceiveTimeout(stockConsumerReceiveTimeout);
+		factory.setPrefetchCount(stockConsumerBatchSize * 2);
+		factory.setConcurrentConsumers(stockConsumerConcurrency);
+		factory.setDefaultRequeueRejected(false);
+		if (virtualThreads) {
+			factory.setTaskExecutor(new VirtualThreadTaskExecutor("stock-changes-consumer-"));
+		}
 		return factory;
 	}
 
@@ -148,6 +275,28 @@ public class RabbitMQConfig {
 		return BindingBuilder.bind(stockChangeQueue()).to(stockChangeExchange()).with(STOCK_CHANGE_ROUTING_KEY);
 	}
 
+	/**
+	 * The stock.changes.partitions partition queues and their bindings; empty when the
+	 * topology is not partitioned. Queues dead-letter to the same DLQ as stock-changes.
+	 * With several instances each one attaches a consumer to every partition queue, so the
+	 * broker delivers to one of them at a time (single active consumer) and fails over to
+	 * the next when it goes away. Queue arguments cannot change on an existing queue, so
+	 * partition queues declared before this argument must be deleted once.
+	 */
+	@Bean
+	Declarables stockChangePartitionQueues() {
+
+		List<Declarable> declarables = new ArrayList<>();
+		for (int partition = 0; partition < stockChangePartitions; partition++) {
+			Queue queue = new Queue(stockChangePartitionQueue(partition), true, false, false,
+					Map.of("x-dead-letter-exchange", STOCK_CHANGE_DLX, "x-dead-letter-routing-key", "dlq",
+							"x-single-active-consumer", true));
+			declarables.add(queue);
+			declarables.add(BindingBuilder.bind(queue).to(stockChangeExchange()).with(stockChangePartitionRoutingKey(partition)));
+		}
+		return new Declarables(declarables);
+	}
+
 	@Bean
 	DirectExchange stockChangeDlxExchange() {
 
@@ -166,8 +315,44 @@ public class RabbitMQConfig {
 		return BindingBuilder.bind(stockChangeDlq()).to(stockChangeDlxExchange()).with("dlq");
 	}
 
+	/**
+	 * One retry queue per attempt and consuming queue, {@code <queue>.retry.<n>}, holding
+	 * messages for the n-th delay of rabbitmq.retry.delays-ms and then dead-lettering them
+	 * back to the queue through the default exchange. A tier has a single TTL, so messages
+	 * expire in arrival order and none waits behind a longer delay.
+	 */
+	@Bean
+	Declarables retryQueues() {
+
+		List<String> sources = new ArrayList<>(List.of(MAIN_QUEUE, STOCK_CHANGE_QUEUE));
+		for (int partition = 0; partition < stockChangePartitions; partition++) {
+			sources.add(stockChangePartitionQueue(partition));
+		}
+		List<Declarable> declarables = new ArrayList<>();
+		for (String source : sources) {
+			for (int attempt = 1; attempt <= retryDelaysMs.length; attempt++) {
+				declarables.add(new Queue(TieredRetryRecoverer.retryQueue(source, attempt), true, false, false,
+						Map.of("x-message-ttl", retryDelaysMs[attempt - 1], "x-dead-letter-exchange", "",
+								"x-dead-letter-routing-key", source)));
+			}
+		}
+		return new Declarables(declarables);
+	}
+
+	@Bean
+	TieredRetryRecoverer myQueueRetryRecoverer(RabbitTemplate rabbitTemplate) {
+
+		return new TieredRetryRecoverer(rabbitTemplate, retryDelaysMs.length, DLX_EXCHANGE, DLX_ROUTING_KEY);
+	}
+
+	@Bean
+	TieredRetryRecoverer stockChangeRetryRecoverer(RabbitTemplate rabbitTemplate) {
+
+		return new TieredRetryRecoverer(rabbitTemplate, retryDelaysMs.length, STOCK_CHANGE_DLX, "dlq");
+	}
+
 	@Bean
-	public RabbitTemplate rabbitTemplate(CachingConnectionFactory connectionFactory, Jackson2JsonMessageConverter messageConverter) {
+	public RabbitTemplate rabbitTemplate(CachingConnectionFactory connectionFactory, MessageConverter messageConverter) {
 	    RabbitTemplate template = new RabbitTemplate(connectionFactory);
 	    template.setMessageConverter(messageConverter);
 	    return template;
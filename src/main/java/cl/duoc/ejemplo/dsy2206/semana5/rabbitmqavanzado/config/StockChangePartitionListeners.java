@@ -0,0 +1,67 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.springframework.amqp.rabbit.annotation.RabbitListenerConfigurer;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.listener.MethodRabbitListenerEndpoint;
+import org.springframework.amqp.rabbit.listener.RabbitListenerEndpointRegistrar;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.handler.annotation.support.DefaultMessageHandlerMethodFactory;
+import org.springframework.util.ReflectionUtils;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeConsumerService;
+
+/**
+ * One batch listener per stock-changes partition queue, each with a single consumer, so
+ * events of a product are folded in publish order while partitions are consumed in
+ * parallel. Across instances the queues' single-active-consumer argument keeps that order. The listener on the plain stock-changes queue keeps draining what was
+ * published before partitioning was switched on.
+ */
+@Configuration
+@ConditionalOnExpression("${stock.consumer.enabled:false} and ${stock.changes.partitions:0} > 0")
+public class StockChangePartitionListeners implements RabbitListenerConfigurer {
+
+	private final StockChangeConsumerService stockChangeConsumerService;
+	private final SimpleRabbitListenerContainerFactory stockChangeBatchContainerFactory;
+	private final BeanFactory beanFactory;
+
+	@Value("${stock.changes.partitions:0}")
+	private int partitions;
+
+	public StockChangePartitionListeners(StockChangeConsumerService stockChangeConsumerService,
+			@Qualifier("stockChangeBatchContainerFactory") SimpleRabbitListenerContainerFactory stockChangeBatchContainerFactory,
+			BeanFactory beanFactory) {
+
+		this.stockChangeConsumerService = stockChangeConsumerService;
+		this.stockChangeBatchContainerFactory = stockChangeBatchContainerFactory;
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void configureRabbitListeners(RabbitListenerEndpointRegistrar registrar) {
+
+		DefaultMessageHandlerMethodFactory handlerMethodFactory = new DefaultMessageHandlerMethodFactory();
+		handlerMethodFactory.setBeanFactory(beanFactory);
+		handlerMethodFactory.afterPropertiesSet();
+		Method listener = ReflectionUtils.findMethod(StockChangeConsumerService.class, "recibirLoteCambiosStock", List.class);
+		for (int partition = 0; partition < partitions; partition++) {
+			MethodRabbitListenerEndpoint endpoint = new MethodRabbitListenerEndpoint();
+			endpoint.setId("listener-stock-changes-p" + partition);
+			endpoint.setQueueNames(RabbitMQConfig.stockChangePartitionQueue(partition));
+			endpoint.setBean(stockChangeConsumerService);
+			endpoint.setMethod(listener);
+			endpoint.setMessageHandlerMethodFactory(handlerMethodFactory);
+			endpoint.setBeanFactory(beanFactory);
+			// More than one consumer on a partition would reorder its products' events; other
+			// instances' consumers stay idle behind the broker's single active consumer
+			endpoint.setConcurrency("1");
+			registrar.registerEndpoint(endpoint, stockChangeBatchContainerFactory);
+		}
+	}
+}
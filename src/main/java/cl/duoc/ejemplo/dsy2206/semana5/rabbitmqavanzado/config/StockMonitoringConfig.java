@@ -0,0 +1,123 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import java.nio.file.Path;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.AdaptivePollInterval;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ChangelogStockChangeSource;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.PollingStockChangeSource;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeSource;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.OffHeapSnapshotStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.OpenAddressingSnapshotStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.PartitionedSnapshotStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.SnapshotCheckpoint;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.StockSnapshotStore;
+
+@Configuration
+public class StockMonitoringConfig {
+
+	@Value("${stock.monitoring.snapshot-store.type:heap}")
+	private String snapshotStoreType;
+
+	@Value("${stock.monitoring.snapshot-store.expected-products:100000}")
+	private int expectedProducts;
+
+	@Value("${stock.monitoring.snapshot-store.mapped-dir:./data/snapshot}")
+	private String mappedDirectory;
+
+	@Value("${stock.monitoring.diff.parallelism:1}")
+	private int diffParallelism;
+
+	@Value("${stock.monitoring.checkpoint.dir:./data/checkpoint}")
+	private String checkpointDirectory;
+
+	@Value("${stock.monitoring.poll-interval:30000}")
+	private long pollIntervalMs;
+
+	@Value("${stock.monitoring.adaptive.enabled:false}")
+	private boolean adaptivePolling;
+
+	@Value("${stock.monitoring.adaptive.min-interval:1000}")
+	private long adaptiveMinIntervalMs;
+
+	@Value("${stock.monitoring.adaptive.max-interval:300000}")
+	private long adaptiveMaxIntervalMs;
+
+	@Value("${stock.monitoring.adaptive.busy-threshold:100}")
+	private long adaptiveBusyThreshold;
+
+	@Value("${stock.monitoring.adaptive.backoff-multiplier:2.0}")
+	private double adaptiveBackoffMultiplier;
+
+	@Value("${stock.monitoring.change-source.type:poll}")
+	private String changeSourceType;
+
+	@Value("${stock.monitoring.change-source.changelog.max-entries:10000}")
+	private int changelogMaxEntries;
+
+	@Value("${stock.monitoring.change-source.changelog.gap-timeout:5000}")
+	private long changelogGapTimeoutMs;
+
+	/**
+	 * With diff parallelism above one the snapshot is split into that many partitions
+	 * (rounded up to a power of two), one per diff worker.
+	 */
+	@Bean
+	StockSnapshotStore stockSnapshotStore() {
+
+		if (diffParallelism <= 1) {
+			return newSnapshotStore(expectedProducts, Path.of(mappedDirectory));
+		}
+		int partitions = Integer.highestOneBit(diffParallelism - 1) << 1;
+		return new PartitionedSnapshotStore(partitions,
+				partition -> newSnapshotStore(expectedProducts / partitions, Path.of(mappedDirectory, "p" + partition)));
+	}
+
+	private StockSnapshotStore newSnapshotStore(int expectedSize, Path mappedPath) {
+
+		return switch (snapshotStoreType) {
+		case "heap" -> new OpenAddressingSnapshotStore(expectedSize);
+		case "offheap" -> new OffHeapSnapshotStore(expectedSize, null);
+		case "mapped" -> new OffHeapSnapshotStore(expectedSize, mappedPath);
+		default -> throw new IllegalArgumentException("Unknown stock.monitoring.snapshot-store.type: " + snapshotStoreType);
+		};
+	}
+
+	/**
+	 * Delay between stock polls. Starts at poll-interval and, with adaptive polling off, stays there.
+	 */
+	@Bean
+	AdaptivePollInterval stockPollInterval() {
+
+		if (!adaptivePolling) {
+			return AdaptivePollInterval.fixed(pollIntervalMs);
+		}
+		return new AdaptivePollInterval(pollIntervalMs, adaptiveMinIntervalMs, adaptiveMaxIntervalMs, adaptiveBusyThreshold,
+				adaptiveBackoffMultiplier);
+	}
+
+	@Bean
+	StockChangeSource stockChangeSource(ProductRepository productRepository, DataSource dataSource) {
+
+		return switch (changeSourceType) {
+		case "poll" -> new PollingStockChangeSource(productRepository);
+		case "changelog" -> new ChangelogStockChangeSource(dataSource, productRepository, changelogMaxEntries,
+				changelogGapTimeoutMs, System::currentTimeMillis);
+		default -> throw new IllegalArgumentException("Unknown stock.monitoring.change-source.type: " + changeSourceType);
+		};
+	}
+
+	@Bean
+	@ConditionalOnProperty(value = "stock.monitoring.checkpoint.enabled", havingValue = "true")
+	SnapshotCheckpoint snapshotCheckpoint() {
+
+		return new SnapshotCheckpoint(Path.of(checkpointDirectory));
+	}
+}
@@ -0,0 +1,41 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import java.time.Instant;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.AdaptivePollInterval;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeMonitoringService;
+
+/**
+ * Schedules the stock poll with the interval the last poll left in {@link AdaptivePollInterval}.
+ * The next run is only planned once the previous one completed, so polls never overlap. A
+ * fixed interval keeps fixed-rate timing (measured from the previous scheduled start, a run
+ * that overran starts the next one at once); an adaptive one is a delay after completion.
+ */
+@Configuration
+@ConditionalOnProperty(value = "stock.monitoring.enabled", havingValue = "true", matchIfMissing = true)
+public class StockPollScheduler implements SchedulingConfigurer {
+
+	private final StockChangeMonitoringService stockChangeMonitoringService;
+	private final AdaptivePollInterval stockPollInterval;
+
+	public StockPollScheduler(StockChangeMonitoringService stockChangeMonitoringService, AdaptivePollInterval stockPollInterval) {
+
+		this.stockChangeMonitoringService = stockChangeMonitoringService;
+		this.stockPollInterval = stockPollInterval;
+	}
+
+	@Override
+	public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+
+		// The injected service is the transactional proxy, so each run gets its read-only transaction
+		taskRegistrar.addTriggerTask(stockChangeMonitoringService::monitorStockChanges, context -> {
+			Instant last = stockPollInterval.isFixed() ? context.lastScheduledExecution() : context.lastCompletion();
+			return last == null ? Instant.now() : last.plusMillis(stockPollInterval.currentMs());
+		});
+	}
+}
@@ -0,0 +1,107 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+
+/**
+ * Streams the JFR {@code jdk.VirtualThreadPinned} event in-process and reports where
+ * virtual threads block while pinned to their carrier (typically a JDBC driver call
+ * inside a {@code synchronized} block). Sites are keyed by the first non-JDK frame and
+ * the first application frame, logged once when first seen and summarized periodically.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnProperty(value = "virtual-threads.pinning-report.enabled", havingValue = "true")
+public class VirtualThreadPinningReporter {
+
+	private static final Logger logger = LoggerFactory.getLogger(VirtualThreadPinningReporter.class);
+	private static final String APPLICATION_PACKAGE = "cl.duoc.";
+
+	@Value("${virtual-threads.pinning-report.threshold-ms:20}")
+	private long thresholdMs;
+
+	private final Map<String, PinnedSite> sites = new ConcurrentHashMap<>();
+	private RecordingStream recordingStream;
+
+	@PostConstruct
+	public void start() {
+
+		recordingStream = new RecordingStream();
+		recordingStream.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ofMillis(thresholdMs)).withStackTrace();
+		recordingStream.onEvent("jdk.VirtualThreadPinned", this::onPinned);
+		recordingStream.startAsync();
+		logger.info("Reporting virtual thread pinning longer than {} ms", thresholdMs);
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		recordingStream.close();
+		logSummary();
+	}
+
+	@Scheduled(fixedRateString = "${virtual-threads.pinning-report.interval:60000}")
+	public void logSummary() {
+
+		sites.entrySet().stream()
+				.sorted(Comparator.comparingLong((Map.Entry<String, PinnedSite> entry) -> entry.getValue().totalNanos.sum()).reversed())
+				.limit(10)
+				.forEach(entry -> logger.warn("Pinned {} times, {} ms total: {}", entry.getValue().count.sum(),
+						entry.getValue().totalNanos.sum() / 1_000_000, entry.getKey()));
+	}
+
+	private void onPinned(RecordedEvent event) {
+
+		String site = describeSite(event);
+		PinnedSite pinned = sites.computeIfAbsent(site, key -> {
+			logger.warn("Virtual thread pinned for {} ms at {}", event.getDuration().toMillis(), key);
+			return new PinnedSite();
+		});
+		pinned.count.increment();
+		pinned.totalNanos.add(event.getDuration().toNanos());
+	}
+
+	private static String describeSite(RecordedEvent event) {
+
+		if (event.getStackTrace() == null) {
+			return "<no stack trace>";
+		}
+		String blocking = null;
+		String application = null;
+		for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+			String type = frame.getMethod().getType().getName();
+			if (blocking == null && !type.startsWith("java.") && !type.startsWith("jdk.") && !type.startsWith("sun.")) {
+				blocking = type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+			}
+			if (type.startsWith(APPLICATION_PACKAGE)) {
+				application = type + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+				break;
+			}
+		}
+		return blocking + (application != null && !application.equals(blocking) ? " <- " + application : "");
+	}
+
+	private static final class PinnedSite {
+
+		private final LongAdder count = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+	}
+}
@@ -1,44 +1,125 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.controller;
 
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.CatalogVersionDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductPageDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductVersionDTO;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
-import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ProductQueryService;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeNotificationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/monitoring")
 public class ProductController {
 
-    private final ProductRepository productRepository;
+    private final ProductQueryService productQueryService;
     private final StockChangeNotificationService stockChangeNotificationService;
+    private final ObjectMapper objectMapper;
 
-    public ProductController(ProductRepository productRepository,
-                           StockChangeNotificationService stockChangeNotificationService) {
-        this.productRepository = productRepository;
+    @Value("${monitoring.api.max-page-size:1000}")
+    private int maxPageSize;
+
+    public ProductController(ProductQueryService productQueryService,
+                           StockChangeNotificationService stockChangeNotificationService,
+                           ObjectMapper objectMapper) {
+        this.productQueryService = productQueryService;
         this.stockChangeNotificationService = stockChangeNotificationService;
+        this.objectMapper = objectMapper;
     }
 
-    // Stock monitoring endpoints only
+    // Stock monitoring endpoints only. Reads are conditional: the ETag is a digest of the
+    // cached body, so a 304 costs neither a database round trip nor serialization
     @GetMapping("/products/active")
-    public ResponseEntity<List<Product>> getActiveProductsForMonitoring() {
-        List<Product> products = productRepository.findActiveProducts();
-        return ResponseEntity.ok(products);
+    public ResponseEntity<List<Product>> getActiveProductsForMonitoring(WebRequest request) {
+        return conditional(productQueryService.findActiveProducts(), request);
+    }
+
+    @GetMapping("/products/active/page")
+    public ResponseEntity<ProductPageDTO> getActiveProductPage(@RequestParam(required = false) Long after,
+                                                               @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(productQueryService.findActiveProductPage(null, after, pageSize(limit)));
+    }
+
+    @GetMapping(value = "/products/active/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamActiveProducts() {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(ndjson(null));
     }
 
     @GetMapping("/products/{id}")
-    public ResponseEntity<Product> getProductForMonitoring(@PathVariable Long id) {
-        Optional<Product> product = productRepository.findById(id);
-        return product.map(ResponseEntity::ok)
-                     .orElse(ResponseEntity.notFound().build());
+    public ResponseEntity<Product> getProductForMonitoring(@PathVariable Long id, WebRequest request) {
+        Product product = productQueryService.findProduct(id);
+        if (product == null) {
+            return ResponseEntity.notFound().build();
+        }
+        String eTag = ProductVersionDTO.of(product).toETag();
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(product);
     }
 
     @GetMapping("/products/category/{category}")
-    public ResponseEntity<List<Product>> getProductsByCategoryForMonitoring(@PathVariable String category) {
-        List<Product> products = productRepository.findActiveProductsByCategory(category);
-        return ResponseEntity.ok(products);
+    public ResponseEntity<List<Product>> getProductsByCategoryForMonitoring(@PathVariable String category, WebRequest request) {
+        return conditional(productQueryService.findActiveProductsByCategory(category), request);
+    }
+
+    @GetMapping("/products/category/{category}/page")
+    public ResponseEntity<ProductPageDTO> getCategoryProductPage(@PathVariable String category,
+                                                                 @RequestParam(required = false) Long after,
+                                                                 @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(productQueryService.findActiveProductPage(category, after, pageSize(limit)));
+    }
+
+    @GetMapping(value = "/products/category/{category}/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCategoryProducts(@PathVariable String category) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(ndjson(category));
+    }
+
+    private static ResponseEntity<List<Product>> conditional(List<Product> products, WebRequest request) {
+        String eTag = CatalogVersionDTO.of(products).toETag();
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+        return ResponseEntity.ok().eTag(eTag).body(products);
+    }
+
+    private int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, maxPageSize));
+    }
+
+    /**
+     * One JSON object per line, written as rows are scrolled. The first row is flushed
+     * right away and then every 100 rows, so clients start parsing before the query ends.
+     */
+    private StreamingResponseBody ndjson(String category) {
+        return out -> {
+            int[] written = { 0 };
+            try {
+                productQueryService.streamActiveProducts(category, product -> {
+                    try {
+                        out.write(objectMapper.writeValueAsBytes(product));
+                        out.write('\n');
+                        if (written[0]++ % 100 == 0) {
+                            out.flush();
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                // Client went away; the transaction and cursor are already closed
+                throw e.getCause();
+            }
+        };
     }
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.controller;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesAggregationService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator.Mode;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator.Span;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Windowed sales served from memory, so dashboards do not query the database.
+ * {@code window} is 1m, 5m or 1h; {@code mode} is sliding (the last window) or
+ * tumbling (the current clock-aligned window so far).
+ */
+@RestController
+@RequestMapping("/api/monitoring/sales")
+@ConditionalOnProperty(value = "stock.monitoring.sales-aggregation.enabled", havingValue = "true", matchIfMissing = true)
+public class SalesAggregationController {
+
+    private final SalesAggregationService salesAggregationService;
+
+    public SalesAggregationController(SalesAggregationService salesAggregationService) {
+        this.salesAggregationService = salesAggregationService;
+    }
+
+    @GetMapping("/products/top")
+    public ResponseEntity<List<SalesTotalDTO>> getTopProducts(@RequestParam(defaultValue = "5m") String window,
+                                                              @RequestParam(defaultValue = "sliding") String mode,
+                                                              @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(salesAggregationService.getTopProducts(span(window), mode(mode), Math.min(Math.max(limit, 0), SalesWindowAggregator.MAX_RANKED)));
+    }
+
+    @GetMapping("/categories")
+    public ResponseEntity<List<SalesTotalDTO>> getCategoryTotals(@RequestParam(defaultValue = "5m") String window,
+                                                                 @RequestParam(defaultValue = "sliding") String mode) {
+        return ResponseEntity.ok(salesAggregationService.getCategoryTotals(span(window), mode(mode)));
+    }
+
+    @GetMapping("/categories/{category}")
+    public ResponseEntity<SalesTotalDTO> getCategoryTotal(@PathVariable String category,
+                                                          @RequestParam(defaultValue = "5m") String window,
+                                                          @RequestParam(defaultValue = "sliding") String mode) {
+        return ResponseEntity.ok(salesAggregationService.getCategoryTotal(span(window), mode(mode), category));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadWindow(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private static Span span(String window) {
+        return Span.fromLabel(window);
+    }
+
+    private static Mode mode(String mode) {
+        return Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+    }
+}
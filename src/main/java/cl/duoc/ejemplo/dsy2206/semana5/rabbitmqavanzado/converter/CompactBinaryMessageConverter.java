@@ -0,0 +1,258 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.converter;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.AbstractMessageConverter;
+import org.springframework.amqp.support.converter.MessageConversionException;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+/**
+ * Hand-written binary encoding for the high-volume DTOs. A message body is a
+ * format version byte, a type tag byte and the fields in declaration order:
+ * integers as zig-zag varints, strings as length-prefixed UTF-8, decimals as
+ * scale plus unscaled varint and timestamps as epoch seconds plus nanos (UTC).
+ * Selected by content type, so JSON consumers keep working during rollout.
+ */
+public class CompactBinaryMessageConverter extends AbstractMessageConverter {
+
+	public static final String CONTENT_TYPE = "application/x-pulso-binary";
+
+	private static final byte FORMAT_VERSION = 1;
+	private static final byte TYPE_STOCK_CHANGE = 1;
+	private static final byte TYPE_PRODUCTO = 2;
+
+	@Override
+	protected Message createMessage(Object object, MessageProperties messageProperties) {
+
+		Writer writer = new Writer();
+		writer.writeByte(FORMAT_VERSION);
+		if (object instanceof StockChangeEventDTO event) {
+			writer.writeByte(TYPE_STOCK_CHANGE);
+			writer.writeLong(event.getProductId());
+			writer.writeString(event.getProductName());
+			writer.writeString(event.getProductCategory());
+			writer.writeVarLong(event.getQuantityChanged());
+			writer.writeVarLong(event.getNewQuantity());
+			writer.writeDecimal(event.getSaleTotal());
+			writer.writeDateTime(event.getChangeTimestamp());
+		} else if (object instanceof ProductoDTO producto) {
+			writer.writeByte(TYPE_PRODUCTO);
+			writer.writeLong(producto.getId());
+			writer.writeString(producto.getName());
+			writer.writeString(producto.getDescription());
+			writer.writeVarLong(producto.getQuantity());
+			writer.writeString(producto.getCategory());
+			writer.writeByte((byte) (producto.isActive() ? 1 : 0));
+			writer.writeDecimal(producto.getPrice());
+			writer.writeDateTime(producto.getLastPriceUpdate());
+			writer.writeDecimal(producto.getPreviousPrice());
+			writer.writeLong(producto.getVersion());
+		} else {
+			throw new MessageConversionException("No compact binary encoding for " + object.getClass().getName());
+		}
+		messageProperties.setContentType(CONTENT_TYPE);
+		byte[] body = writer.toByteArray();
+		messageProperties.setContentLength(body.length);
+		return new Message(body, messageProperties);
+	}
+
+	@Override
+	public Object fromMessage(Message message) {
+
+		Reader reader = new Reader(message.getBody());
+		byte version = reader.readByte();
+		if (version != FORMAT_VERSION) {
+			throw new MessageConversionException("Unsupported compact binary format version " + version);
+		}
+		byte type = reader.readByte();
+		switch (type) {
+		case TYPE_STOCK_CHANGE:
+			return new StockChangeEventDTO(reader.readLong(), reader.readString(), reader.readString(),
+					(int) reader.readVarLong(), (int) reader.readVarLong(), reader.readDecimal(), reader.readDateTime());
+		case TYPE_PRODUCTO:
+			return new ProductoDTO(reader.readLong(), reader.readString(), reader.readString(), (int) reader.readVarLong(),
+					reader.readString(), reader.readByte() != 0, reader.readDecimal(), reader.readDateTime(),
+					reader.readDecimal(), reader.readLong());
+		default:
+			throw new MessageConversionException("Unknown compact binary type tag " + type);
+		}
+	}
+
+	private static final class Writer {
+
+		private byte[] buffer = new byte[128];
+		private int position;
+
+		void writeByte(byte value) {
+
+			ensureCapacity(1);
+			buffer[position++] = value;
+		}
+
+		void writeVarLong(long value) {
+
+			long zigZag = (value << 1) ^ (value >> 63);
+			ensureCapacity(10);
+			while ((zigZag & ~0x7FL) != 0) {
+				buffer[position++] = (byte) ((zigZag & 0x7F) | 0x80);
+				zigZag >>>= 7;
+			}
+			buffer[position++] = (byte) zigZag;
+		}
+
+		/** Nullable long: a presence byte followed by a varint. */
+		void writeLong(Long value) {
+
+			writeByte((byte) (value == null ? 0 : 1));
+			if (value != null) {
+				writeVarLong(value);
+			}
+		}
+
+		void writeString(String value) {
+
+			if (value == null) {
+				writeVarLong(-1);
+				return;
+			}
+			byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+			writeVarLong(bytes.length);
+			ensureCapacity(bytes.length);
+			System.arraycopy(bytes, 0, buffer, position, bytes.length);
+			position += bytes.length;
+		}
+
+		void writeDecimal(BigDecimal value) {
+
+			if (value == null) {
+				writeByte((byte) 0);
+				return;
+			}
+			BigInteger unscaled = value.unscaledValue();
+			if (unscaled.bitLength() < 64) {
+				writeByte((byte) 1);
+				writeVarLong(value.scale());
+				writeVarLong(unscaled.longValue());
+			} else {
+				byte[] bytes = unscaled.toByteArray();
+				writeByte((byte) 2);
+				writeVarLong(value.scale());
+				writeVarLong(bytes.length);
+				ensureCapacity(bytes.length);
+				System.arraycopy(bytes, 0, buffer, position, bytes.length);
+				position += bytes.length;
+			}
+		}
+
+		void writeDateTime(LocalDateTime value) {
+
+			writeByte((byte) (value == null ? 0 : 1));
+			if (value != null) {
+				writeVarLong(value.toEpochSecond(ZoneOffset.UTC));
+				writeVarLong(value.getNano());
+			}
+		}
+
+		byte[] toByteArray() {
+
+			return Arrays.copyOf(buffer, position);
+		}
+
+		private void ensureCapacity(int extra) {
+
+			if (position + extra > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length << 1, position + extra));
+			}
+		}
+	}
+
+	private static final class Reader {
+
+		private final byte[] buffer;
+		private int position;
+
+		Reader(byte[] buffer) {
+
+			this.buffer = buffer;
+		}
+
+		byte readByte() {
+
+			if (position >= buffer.length) {
+				throw new MessageConversionException("Truncated compact binary message");
+			}
+			return buffer[position++];
+		}
+
+		long readVarLong() {
+
+			long zigZag = 0;
+			for (int shift = 0; shift < 64; shift += 7) {
+				byte b = readByte();
+				zigZag |= (long) (b & 0x7F) << shift;
+				if ((b & 0x80) == 0) {
+					return (zigZag >>> 1) ^ -(zigZag & 1);
+				}
+			}
+			throw new MessageConversionException("Malformed varint in compact binary message");
+		}
+
+		Long readLong() {
+
+			return readByte() == 0 ? null : readVarLong();
+		}
+
+		String readString() {
+
+			int length = (int) readVarLong();
+			if (length < 0) {
+				return null;
+			}
+			checkRemaining(length);
+			String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+			position += length;
+			return value;
+		}
+
+		BigDecimal readDecimal() {
+
+			byte kind = readByte();
+			if (kind == 0) {
+				return null;
+			}
+			int scale = (int) readVarLong();
+			if (kind == 1) {
+				return BigDecimal.valueOf(readVarLong(), scale);
+			}
+			int length = (int) readVarLong();
+			checkRemaining(length);
+			BigInteger unscaled = new BigInteger(buffer, position, length);
+			position += length;
+			return new BigDecimal(unscaled, scale);
+		}
+
+		LocalDateTime readDateTime() {
+
+			if (readByte() == 0) {
+				return null;
+			}
+			return LocalDateTime.ofEpochSecond(readVarLong(), (int) readVarLong(), ZoneOffset.UTC);
+		}
+
+		private void checkRemaining(int length) {
+
+			if (length > buffer.length - position) {
+				throw new MessageConversionException("Truncated compact binary message");
+			}
+		}
+	}
+}
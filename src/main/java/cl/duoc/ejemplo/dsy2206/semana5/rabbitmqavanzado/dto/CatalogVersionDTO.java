@@ -0,0 +1,37 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.SnapshotHashing;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * ETag of a product listing: the row count and an order-dependent chain of the product
+ * digests of {@link ProductVersionDTO}. Unlike sums, offsetting changes on two products
+ * (a sale on one, an equal restock on another) do not cancel out.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class CatalogVersionDTO {
+
+    private long count;
+    private long digest;
+
+    public static CatalogVersionDTO of(List<Product> products) {
+        long digest = 0;
+        for (Product product : products) {
+            digest = SnapshotHashing.mix(digest * 31 + ProductVersionDTO.digest(product));
+        }
+        return new CatalogVersionDTO(products.size(), digest);
+    }
+
+    public String toETag() {
+        return "\"c" + count + "-" + Long.toHexString(digest) + "\"";
+    }
+}
@@ -0,0 +1,28 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+@Builder
+public class PriceChangeEventDTO {
+    private Long productId;
+    private String productName;
+    private String productCategory;
+    // Price of the last notification for this product (or the price seen at startup)
+    private BigDecimal oldPrice;
+    private BigDecimal newPrice;
+    private BigDecimal changeAmount;
+    private double changePercentage;
+    private LocalDateTime changeTimestamp;
+    private String changeReason;
+}
@@ -0,0 +1,19 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class ProductPageDTO {
+
+    private List<ProductSummaryDTO> items;
+    // Pass as "after" to get the next page; null on the last page
+    private Long nextCursor;
+}
@@ -0,0 +1,27 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Public view of a product for listing endpoints: no JPA internals such as the
+ * version column. Built through a JPQL constructor expression.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class ProductSummaryDTO {
+
+    private Long id;
+    private String name;
+    private String category;
+    private int quantity;
+    private BigDecimal price;
+    private LocalDateTime lastPriceUpdate;
+}
@@ -0,0 +1,52 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.SnapshotHashing;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * A product's ETag: a 64-bit digest of every field of the served representation, taken
+ * from the copy being served. Any change to the body changes the tag whether or not it
+ * bumped VERSION (sales applied to the cache, or SQL edits of stock or price), so the tag
+ * is a strong validator up to the odds of a 64-bit collision.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class ProductVersionDTO {
+
+    private Long id;
+    private long digest;
+
+    public static ProductVersionDTO of(Product product) {
+        return new ProductVersionDTO(product.getId(), digest(product));
+    }
+
+    static long digest(Product product) {
+        long h = SnapshotHashing.mix(product.getId() != null ? product.getId() : 0);
+        h = SnapshotHashing.mix(h + (product.getVersion() != null ? product.getVersion() : 0));
+        h = SnapshotHashing.mix(h + product.getQuantity());
+        h = SnapshotHashing.mix(h + (product.isActive() ? 1 : 0));
+        h = SnapshotHashing.mix(h + epochNanos(product.getLastPriceUpdate()));
+        h = SnapshotHashing.mix(h + Objects.hashCode(product.getPrice() != null ? product.getPrice().stripTrailingZeros() : null));
+        h = SnapshotHashing.mix(h + Objects.hashCode(product.getPreviousPrice() != null ? product.getPreviousPrice().stripTrailingZeros() : null));
+        h = SnapshotHashing.mix(h + Objects.hashCode(product.getName()));
+        h = SnapshotHashing.mix(h + Objects.hashCode(product.getDescription()));
+        return SnapshotHashing.mix(h + Objects.hashCode(product.getCategory()));
+    }
+
+    private static long epochNanos(LocalDateTime timestamp) {
+        return timestamp != null ? timestamp.toLocalDate().toEpochDay() * 86_400_000_000_000L + timestamp.toLocalTime().toNanoOfDay() : 0;
+    }
+
+    public String toETag() {
+        return "\"" + id + "-" + Long.toHexString(digest) + "\"";
+    }
+}
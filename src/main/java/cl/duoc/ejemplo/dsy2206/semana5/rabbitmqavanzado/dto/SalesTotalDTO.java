@@ -0,0 +1,29 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class SalesTotalDTO {
+    // Product id or category name
+    private String key;
+    private long units;
+    private BigDecimal revenue;
+
+    // Totals are accumulated in cents and only turned back into a decimal when read
+    public static SalesTotalDTO fromCents(String key, long units, long revenueCents) {
+        return new SalesTotalDTO(key, units, BigDecimal.valueOf(revenueCents, 2));
+    }
+
+    public static long toCents(BigDecimal amount) {
+        return amount == null ? 0 : amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+}
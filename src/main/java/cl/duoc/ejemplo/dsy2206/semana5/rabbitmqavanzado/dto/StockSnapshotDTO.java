@@ -0,0 +1,28 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * Lightweight projection of the PRODUCT columns the stock monitor needs.
+ * Built through a JPQL constructor expression, so rows are never managed
+ * entities and do not accumulate in the persistence context.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@ToString
+public class StockSnapshotDTO {
+
+    private Long id;
+    private String name;
+    private String category;
+    private int quantity;
+    private BigDecimal price;
+    private LocalDateTime lastUpdate;
+}
@@ -0,0 +1,59 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Queries that need runtime JDBC tuning and therefore cannot be expressed
+ * with a plain {@code @Query} on {@link ProductRepository}.
+ */
+public interface ProductRepositoryCustom {
+
+    /**
+     * Stream a projection of active products, optionally limited to rows modified
+     * after a timestamp. Must be consumed inside a transaction and closed by the caller.
+     *
+     * @param updatedAfter only rows with LAST_PRICE_UPDATE after this instant, or null for all
+     * @param fetchSize    JDBC fetch size used while scrolling the result set
+     */
+    default Stream<StockSnapshotDTO> streamActiveStockSnapshots(LocalDateTime updatedAfter, int fetchSize) {
+        return streamActiveStockSnapshots(updatedAfter, fetchSize, 1, null);
+    }
+
+    /**
+     * As {@link #streamActiveStockSnapshots(LocalDateTime, int)}, limited to the products
+     * whose {@code MOD(id, shardCount)} is one of {@code ownedShards}.
+     *
+     * @param ownedShards shards to read, or null for all of them
+     */
+    Stream<StockSnapshotDTO> streamActiveStockSnapshots(LocalDateTime updatedAfter, int fetchSize, int shardCount,
+            Collection<Integer> ownedShards);
+
+    /**
+     * Projection of the given products, skipping inactive or missing ones. Callers keep
+     * {@code productIds} within the database's IN list limit.
+     */
+    List<StockSnapshotDTO> findActiveStockSnapshots(Collection<Long> productIds);
+
+    /**
+     * One keyset page of active products ordered by id: the first {@code limit} rows with
+     * an id greater than {@code afterId}. Cost does not grow with the page number.
+     *
+     * @param category only this category, or null for all
+     * @param afterId  id of the last row of the previous page, or null for the first page
+     */
+    List<ProductSummaryDTO> findActiveProductPage(String category, Long afterId, int limit);
+
+    /**
+     * Stream active products ordered by id. Must be consumed inside a transaction and
+     * closed by the caller.
+     *
+     * @param category only this category, or null for all
+     */
+    Stream<ProductSummaryDTO> streamActiveProductSummaries(String category, int fetchSize);
+}
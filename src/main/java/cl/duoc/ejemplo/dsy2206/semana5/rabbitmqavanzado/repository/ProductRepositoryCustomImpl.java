@@ -0,0 +1,95 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.hibernate.jpa.HibernateHints;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ProductRepositoryCustomImpl implements ProductRepositoryCustom {
+
+    private static final String SNAPSHOT_SELECT = "SELECT new cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO("
+            + "p.id, p.name, p.category, p.quantity, p.price, p.lastPriceUpdate) FROM Product p WHERE p.active = true";
+
+    private static final String SUMMARY_SELECT = "SELECT new cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO("
+            + "p.id, p.name, p.category, p.quantity, p.price, p.lastPriceUpdate) FROM Product p WHERE p.active = true";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public Stream<StockSnapshotDTO> streamActiveStockSnapshots(LocalDateTime updatedAfter, int fetchSize, int shardCount,
+            Collection<Integer> ownedShards) {
+        if (ownedShards != null && ownedShards.isEmpty()) {
+            return Stream.empty();
+        }
+        StringBuilder jpql = new StringBuilder(SNAPSHOT_SELECT);
+        if (updatedAfter != null) {
+            jpql.append(" AND p.lastPriceUpdate > :timestamp");
+        }
+        if (ownedShards != null) {
+            jpql.append(" AND MOD(p.id, :shardCount) IN :ownedShards");
+        }
+        TypedQuery<StockSnapshotDTO> query = entityManager.createQuery(jpql.toString(), StockSnapshotDTO.class);
+        if (updatedAfter != null) {
+            query.setParameter("timestamp", updatedAfter);
+        }
+        if (ownedShards != null) {
+            query.setParameter("shardCount", (long) shardCount).setParameter("ownedShards",
+                    ownedShards.stream().map(Integer::longValue).toList());
+        }
+        return query
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    @Override
+    public List<StockSnapshotDTO> findActiveStockSnapshots(Collection<Long> productIds) {
+        return entityManager.createQuery(SNAPSHOT_SELECT + " AND p.id IN :ids", StockSnapshotDTO.class)
+                .setParameter("ids", productIds)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultList();
+    }
+
+    @Override
+    public List<ProductSummaryDTO> findActiveProductPage(String category, Long afterId, int limit) {
+        return summaryQuery(category, afterId)
+                .setMaxResults(limit)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultList();
+    }
+
+    @Override
+    public Stream<ProductSummaryDTO> streamActiveProductSummaries(String category, int fetchSize) {
+        return summaryQuery(category, null)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, fetchSize)
+                .setHint(HibernateHints.HINT_READ_ONLY, true)
+                .getResultStream();
+    }
+
+    private TypedQuery<ProductSummaryDTO> summaryQuery(String category, Long afterId) {
+        StringBuilder jpql = new StringBuilder(SUMMARY_SELECT);
+        if (category != null) {
+            jpql.append(" AND p.category = :category");
+        }
+        if (afterId != null) {
+            jpql.append(" AND p.id > :afterId");
+        }
+        jpql.append(" ORDER BY p.id");
+        TypedQuery<ProductSummaryDTO> query = entityManager.createQuery(jpql.toString(), ProductSummaryDTO.class);
+        if (category != null) {
+            query.setParameter("category", category);
+        }
+        if (afterId != null) {
+            query.setParameter("afterId", afterId);
+        }
+        return query;
+    }
+}
@@ -0,0 +1,65 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+/**
+ * Poll interval that follows the observed change rate: halved after a poll that found at
+ * least {@code busyThreshold} stock changes, multiplied by {@code backoffMultiplier} after a
+ * poll that found none, and kept as is in between, always within [min, max].
+ * <p>
+ * Since a shorter interval leaves fewer changes per poll, under sustained load the interval
+ * settles where a poll finds somewhat less than {@code busyThreshold} changes. Updated by
+ * the poll thread only; readable from any thread.
+ */
+public class AdaptivePollInterval {
+
+    private final long minMs;
+    private final long maxMs;
+    private final long busyThreshold;
+    private final double backoffMultiplier;
+    private volatile long currentMs;
+
+    public AdaptivePollInterval(long initialMs, long minMs, long maxMs, long busyThreshold, double backoffMultiplier) {
+        if (minMs <= 0 || maxMs < minMs || busyThreshold <= 0 || backoffMultiplier < 1) {
+            throw new IllegalArgumentException("Invalid adaptive poll interval settings: min " + minMs + ", max " + maxMs
+                    + ", busy threshold " + busyThreshold + ", backoff " + backoffMultiplier);
+        }
+        this.minMs = minMs;
+        this.maxMs = maxMs;
+        this.busyThreshold = busyThreshold;
+        this.backoffMultiplier = backoffMultiplier;
+        this.currentMs = clamp(initialMs);
+    }
+
+    /**
+     * A fixed interval: every poll is followed by the same delay.
+     */
+    public static AdaptivePollInterval fixed(long intervalMs) {
+        return new AdaptivePollInterval(intervalMs, intervalMs, intervalMs, Long.MAX_VALUE, 1);
+    }
+
+    /**
+     * @param changes stock changes the poll that just finished detected
+     * @return the delay before the next poll
+     */
+    public long onPoll(long changes) {
+        long current = currentMs;
+        if (changes >= busyThreshold) {
+            current = clamp(current / 2);
+        } else if (changes == 0) {
+            current = clamp((long) Math.ceil(current * backoffMultiplier));
+        }
+        currentMs = current;
+        return current;
+    }
+
+    public long currentMs() {
+        return currentMs;
+    }
+
+    public boolean isFixed() {
+        return minMs == maxMs;
+    }
+
+    private long clamp(long intervalMs) {
+        return Math.max(minMs, Math.min(maxMs, intervalMs));
+    }
+}
@@ -0,0 +1,119 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import com.rabbitmq.client.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Acknowledges manually-acked deliveries in batches when they complete out of order.
+ * <p>
+ * Per channel it tracks outstanding delivery tags in arrival order and advances over the
+ * completed prefix; once {@code batchSize} completions have accumulated (or {@link #flush()}
+ * runs) a single {@code basicAck(tag, multiple=true)} covers them all. Failures are nacked
+ * one by one right away; a later multiple ack skips tags that are no longer outstanding.
+ */
+public class BatchAcknowledger {
+    private static final Logger logger = LoggerFactory.getLogger(BatchAcknowledger.class);
+
+    private static final int PENDING = 0;
+    private static final int ACKED = 1;
+    private static final int NACKED = 2;
+
+    private final int batchSize;
+    private final Map<Channel, ChannelAcks> channels = new ConcurrentHashMap<>();
+
+    public BatchAcknowledger(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /** Register a delivery; must be called on the listener thread, in delivery order. */
+    public void received(Channel channel, long deliveryTag) {
+        channels.computeIfAbsent(channel, ChannelAcks::new).received(deliveryTag);
+    }
+
+    public void ack(Channel channel, long deliveryTag) {
+        complete(channel, deliveryTag, false, false);
+    }
+
+    public void nack(Channel channel, long deliveryTag, boolean requeue) {
+        complete(channel, deliveryTag, true, requeue);
+    }
+
+    /** Ack whatever completed prefix is pending on every channel; drops closed channels. */
+    public void flush() {
+        channels.values().removeIf(acks -> !acks.channel.isOpen());
+        for (ChannelAcks acks : channels.values()) {
+            acks.flush();
+        }
+    }
+
+    private void complete(Channel channel, long deliveryTag, boolean nack, boolean requeue) {
+        ChannelAcks acks = channels.get(channel);
+        if (acks == null) {
+            // Channel closed and was dropped; the broker redelivers unacked messages
+            logger.debug("Ignoring completion of delivery {} on a closed channel", deliveryTag);
+            return;
+        }
+        acks.complete(deliveryTag, nack, requeue);
+    }
+
+    private final class ChannelAcks {
+
+        private final Channel channel;
+        // Outstanding delivery tags in arrival order with their PENDING/ACKED/NACKED state
+        private final TreeMap<Long, Integer> outstanding = new TreeMap<>();
+        private long ackableTag = -1;
+        private int ackableCount;
+
+        ChannelAcks(Channel channel) {
+            this.channel = channel;
+        }
+
+        synchronized void received(long deliveryTag) {
+            outstanding.put(deliveryTag, PENDING);
+        }
+
+        synchronized void complete(long deliveryTag, boolean nack, boolean requeue) {
+            if (nack) {
+                basicNack(deliveryTag, requeue);
+            }
+            outstanding.replace(deliveryTag, nack ? NACKED : ACKED);
+            while (!outstanding.isEmpty() && outstanding.firstEntry().getValue() != PENDING) {
+                Map.Entry<Long, Integer> done = outstanding.pollFirstEntry();
+                // The multiple ack must name a tag that is still outstanding, so nacked tags never become it
+                if (done.getValue() == ACKED) {
+                    ackableTag = done.getKey();
+                    ackableCount++;
+                }
+            }
+            if (ackableCount >= batchSize) {
+                flush();
+            }
+        }
+
+        synchronized void flush() {
+            if (ackableCount == 0) {
+                return;
+            }
+            try {
+                channel.basicAck(ackableTag, true);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not ack deliveries up to {}: {}", ackableTag, e.getMessage());
+            }
+            ackableCount = 0;
+        }
+
+        private void basicNack(long deliveryTag, boolean requeue) {
+            try {
+                channel.basicNack(deliveryTag, false, requeue);
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Could not nack delivery {}: {}", deliveryTag, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Reads the STOCK_CHANGE_LOG table, which a trigger on PRODUCT fills with one row per
+ * stock change (see {@code db/stock-change-log-oracle.sql}). An incremental tick reads the
+ * entries after the last committed SEQ_ID and loads only the products they name, so an idle
+ * tick is one index range scan returning no rows and the tick interval can be sub-second.
+ * <p>
+ * Sequence numbers are assigned when the trigger fires, not at commit, so an entry can become
+ * visible after entries with higher numbers were consumed. Each missing number is therefore
+ * tracked for {@code gapTimeoutMs} and looked up by SEQ_ID on every tick, apart from the
+ * range read of new entries, so open holes never use up the {@code maxEntries} budget. A
+ * number stops being tracked as soon as its entry shows up; numbers that never show up
+ * (sequence caching, rollbacks) just expire. A full scan starts tracking the holes among
+ * the last {@value #MAX_MISSING} numbers below the log end it covers.
+ * <p>
+ * Full scans, and incremental ticks before the log position is known, go through the
+ * {@link PollingStockChangeSource} queries.
+ */
+public class ChangelogStockChangeSource implements StockChangeSource {
+    private static final Logger logger = LoggerFactory.getLogger(ChangelogStockChangeSource.class);
+
+    // Oracle limits IN lists to 1000 expressions
+    private static final int MAX_IDS_PER_QUERY = 1000;
+    // Missing SEQ_IDs tracked at most; a larger jump is taken as sequence caching
+    private static final int MAX_MISSING = 1024;
+
+    private final JdbcTemplate jdbcTemplate;
+    // Without the maxEntries row limit: hole lookups return at most MAX_MISSING rows
+    private final JdbcTemplate holeTemplate;
+    private final ProductRepository productRepository;
+    private final PollingStockChangeSource fullScan;
+    private final long gapTimeoutMs;
+    private final LongSupplier clock;
+
+    // Highest SEQ_ID consumed, -1 until a full scan or fallback poll sets it
+    private long position = -1;
+    // SEQ_ID -> deadline of the numbers below position whose entries were not seen yet
+    private NavigableMap<Long, Long> missing = new TreeMap<>();
+    private long pendingPosition = -1;
+    private NavigableMap<Long, Long> pendingMissing;
+
+    /**
+     * @param maxEntries log entries read per tick at most; the rest is read on the next tick
+     */
+    public ChangelogStockChangeSource(DataSource dataSource, ProductRepository productRepository, int maxEntries,
+            long gapTimeoutMs, LongSupplier clock) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setMaxRows(maxEntries);
+        this.jdbcTemplate.setFetchSize(Math.min(maxEntries, 1000));
+        this.holeTemplate = new JdbcTemplate(dataSource);
+        this.productRepository = productRepository;
+        this.fullScan = new PollingStockChangeSource(productRepository);
+        this.gapTimeoutMs = gapTimeoutMs;
+        this.clock = clock;
+    }
+
+    @Override
+    public Stream<StockSnapshotDTO> open(LocalDateTime since, int fetchSize, ShardOwnership ownership) {
+        long now = clock.getAsLong();
+        if (since == null || position < 0) {
+            // Everything committed up to the current end of the log is covered by this scan;
+            // lower numbers still uncommitted now are read once they show up
+            Long last = jdbcTemplate.queryForObject("SELECT MAX(SEQ_ID) FROM STOCK_CHANGE_LOG", Long.class);
+            pendingPosition = last != null ? last : 0;
+            pendingMissing = new TreeMap<>();
+            long first = Math.max(0, pendingPosition - MAX_MISSING);
+            for (long hole = first + 1; hole < pendingPosition; hole++) {
+                pendingMissing.put(hole, now + gapTimeoutMs);
+            }
+            holeTemplate.query("SELECT SEQ_ID FROM STOCK_CHANGE_LOG WHERE SEQ_ID > ? AND SEQ_ID < ?", rs -> {
+                pendingMissing.remove(rs.getLong(1));
+            }, first, pendingPosition);
+            return fullScan.open(since, fetchSize, ownership);
+        }
+        NavigableMap<Long, Long> open = new TreeMap<>(missing);
+        open.values().removeIf(deadline -> deadline <= now);
+        Set<Long> productIds = new LinkedHashSet<>();
+        List<Long> holes = new ArrayList<>(open.keySet());
+        for (int offset = 0; offset < holes.size(); offset += MAX_IDS_PER_QUERY) {
+            List<Long> chunk = holes.subList(offset, Math.min(offset + MAX_IDS_PER_QUERY, holes.size()));
+            holeTemplate.query("SELECT SEQ_ID, PRODUCT_ID FROM STOCK_CHANGE_LOG WHERE SEQ_ID IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")", rs -> {
+                        open.remove(rs.getLong(1));
+                        addOwned(productIds, rs.getLong(2), ownership);
+                    }, chunk.toArray());
+        }
+        long[] highest = { position };
+        jdbcTemplate.query("SELECT SEQ_ID, PRODUCT_ID FROM STOCK_CHANGE_LOG WHERE SEQ_ID > ? ORDER BY SEQ_ID", rs -> {
+            long seq = rs.getLong(1);
+            for (long hole = highest[0] + 1; hole < seq && open.size() < MAX_MISSING; hole++) {
+                open.put(hole, now + gapTimeoutMs);
+            }
+            highest[0] = seq;
+            addOwned(productIds, rs.getLong(2), ownership);
+        }, position);
+        pendingPosition = highest[0];
+        pendingMissing = open;
+        if (productIds.isEmpty()) {
+            return Stream.empty();
+        }
+        logger.debug("Read stock change log after SEQ_ID {} up to {} and {} holes: {} products changed",
+                position, highest[0], holes.size(), productIds.size());
+        List<Long> ids = new ArrayList<>(productIds);
+        return IntStream.iterate(0, offset -> offset < ids.size(), offset -> offset + MAX_IDS_PER_QUERY)
+                .mapToObj(offset -> ids.subList(offset, Math.min(offset + MAX_IDS_PER_QUERY, ids.size())))
+                .flatMap(chunk -> productRepository.findActiveStockSnapshots(chunk).stream());
+    }
+
+    private static void addOwned(Set<Long> productIds, long productId, ShardOwnership ownership) {
+        if (ownership == null || ownership.owns(productId)) {
+            productIds.add(productId);
+        }
+    }
+
+    @Override
+    public void commit() {
+        if (pendingMissing != null) {
+            position = pendingPosition;
+            missing = pendingMissing;
+            pendingMissing = null;
+        }
+    }
+}
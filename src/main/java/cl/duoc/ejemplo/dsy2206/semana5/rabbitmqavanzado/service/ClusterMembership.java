@@ -0,0 +1,15 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+/**
+ * Which stock monitor instances are alive, and therefore which shards of the
+ * product id space this instance polls and diffs.
+ */
+public interface ClusterMembership {
+
+    String getNodeId();
+
+    /**
+     * Shards currently owned by this node. Empty while the node is still joining.
+     */
+    ShardOwnership currentOwnership();
+}
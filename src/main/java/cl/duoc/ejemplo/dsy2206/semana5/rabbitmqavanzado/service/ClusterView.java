@@ -0,0 +1,69 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.LongSupplier;
+
+/**
+ * Heartbeat bookkeeping behind {@link ClusterMembership}, independent of the transport
+ * so it can be driven by a test clock. A member is live while its last heartbeat is
+ * younger than {@code memberTimeoutMs}. A starting node owns nothing for one timeout,
+ * long enough to have heard from every live peer, so it never claims shards that are
+ * still being polled elsewhere.
+ */
+public class ClusterView {
+
+    private final String nodeId;
+    private final int shardCount;
+    private final long memberTimeoutMs;
+    private final LongSupplier clock;
+    private final long startedAt;
+
+    private final Map<String, Long> lastSeen = new HashMap<>();
+    private TreeSet<String> members;
+    private ShardOwnership ownership;
+
+    public ClusterView(String nodeId, int shardCount, long memberTimeoutMs, LongSupplier clock) {
+        this.nodeId = nodeId;
+        this.shardCount = shardCount;
+        this.memberTimeoutMs = memberTimeoutMs;
+        this.clock = clock;
+        this.startedAt = clock.getAsLong();
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public synchronized void onHeartbeat(String memberId) {
+        lastSeen.put(memberId, clock.getAsLong());
+    }
+
+    public synchronized void onLeave(String memberId) {
+        lastSeen.remove(memberId);
+    }
+
+    /**
+     * @return the live members, this node included
+     */
+    public synchronized TreeSet<String> liveMembers() {
+        long now = clock.getAsLong();
+        lastSeen.values().removeIf(seen -> now - seen > memberTimeoutMs);
+        TreeSet<String> live = new TreeSet<>(lastSeen.keySet());
+        live.add(nodeId);
+        return live;
+    }
+
+    public synchronized ShardOwnership currentOwnership() {
+        TreeSet<String> live = liveMembers();
+        if (clock.getAsLong() - startedAt < memberTimeoutMs) {
+            return ShardOwnership.none(shardCount);
+        }
+        if (!live.equals(members)) {
+            members = live;
+            ownership = ShardOwnership.rendezvous(nodeId, live, shardCount);
+        }
+        return ownership;
+    }
+}
@@ -0,0 +1,112 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.converter.CompactBinaryMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.OutboxJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains an {@link OutboxJournal} of stock events to the broker. Events are journaled in the
+ * compact binary encoding; the relay reads a batch from the committed offset, publishes it
+ * with {@link StockEventPublisher#publishAndAwait} and only then commits past it. While the
+ * broker is unavailable the batch is retried with exponential backoff and the journal keeps
+ * growing on disk, so delivery is at least once across broker outages and restarts.
+ */
+public class OutboxRelay {
+    private static final Logger logger = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private static final long IDLE_WAIT_MS = 20;
+    private static final long MAX_BACKOFF_MS = 5000;
+
+    private final OutboxJournal journal;
+    private final StockEventPublisher stockEventPublisher;
+    private final int batchSize;
+    private final CompactBinaryMessageConverter converter = new CompactBinaryMessageConverter();
+    private Thread relayThread;
+    private volatile boolean running;
+
+    public OutboxRelay(OutboxJournal journal, StockEventPublisher stockEventPublisher, int batchSize) {
+        this.journal = journal;
+        this.stockEventPublisher = stockEventPublisher;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Journal events for delivery. Only appends to the mapped segment; the caller never
+     * waits for the broker or the disk, and never gets an exception when the journal is full.
+     *
+     * @return the number of events that were not journaled because the journal is full
+     */
+    public int append(List<StockChangeEventDTO> events) {
+        int rejected = 0;
+        for (StockChangeEventDTO event : events) {
+            if (journal.append(converter.toMessage(event, new MessageProperties()).getBody()) < 0) {
+                rejected++;
+            }
+        }
+        LockSupport.unpark(relayThread);
+        return rejected;
+    }
+
+    public void start() {
+        running = true;
+        relayThread = new Thread(this::relayLoop, "stock-outbox-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+    }
+
+    /**
+     * Stop after delivering what is journaled, waiting at most {@code timeoutMs}. Anything
+     * left stays in the journal for the next start.
+     */
+    public void stop(long timeoutMs) throws InterruptedException {
+        running = false;
+        LockSupport.unpark(relayThread);
+        relayThread.join(timeoutMs);
+        if (relayThread.isAlive()) {
+            relayThread.interrupt();
+            relayThread.join(timeoutMs);
+        }
+    }
+
+    private void relayLoop() {
+        long backoffMs = 0;
+        while (running || (journal.pendingRecords() > 0 && backoffMs == 0)) {
+            OutboxJournal.Batch batch = journal.read(journal.committedOffset(), batchSize);
+            if (batch.payloads().isEmpty()) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(IDLE_WAIT_MS));
+                continue;
+            }
+            List<StockChangeEventDTO> events = new ArrayList<>(batch.payloads().size());
+            for (byte[] payload : batch.payloads()) {
+                events.add((StockChangeEventDTO) converter.fromMessage(new Message(payload)));
+            }
+            try {
+                stockEventPublisher.publishAndAwait(events);
+                journal.commit(batch.endOffset(), events.size());
+                backoffMs = 0;
+            } catch (Exception e) {
+                backoffMs = Math.min(MAX_BACKOFF_MS, Math.max(100, backoffMs * 2));
+                logger.warn("Could not relay {} journaled stock events ({} pending), retrying in {} ms: {}",
+                        events.size(), journal.pendingRecords(), backoffMs, e.getMessage());
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.PartitionedSnapshotStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.SnapshotCheckpoint;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Runs {@link StockDiffer} over the partitions of a {@link PartitionedSnapshotStore} in parallel.
+ * <p>
+ * Every partition has its own single-threaded worker, so a partition is only ever touched by one
+ * thread and its chunks are diffed in arrival order. A chunk is scattered across the partitions,
+ * and once all of its partition tasks finish their events are merged and handed to the publishing
+ * stage. At most {@code maxInFlightChunks} chunks are in flight; beyond that {@link #submit}
+ * blocks the poll thread, which in turn stops pulling rows from the database.
+ */
+public class PartitionedStockDiffer {
+
+    private final PartitionedSnapshotStore snapshot;
+    private final StockDiffer[] differs;
+    private final ExecutorService[] workers;
+    private final Semaphore chunkPermits;
+    private final int maxInFlightChunks;
+    private final Consumer<List<StockChangeEventDTO>> eventSink;
+
+    private final List<CompletableFuture<LocalDateTime>> pendingChunks = new ArrayList<>();
+
+    public PartitionedStockDiffer(PartitionedSnapshotStore snapshot, SnapshotCheckpoint snapshotCheckpoint,
+            int maxInFlightChunks, Consumer<List<StockChangeEventDTO>> eventSink) {
+        this.snapshot = snapshot;
+        this.maxInFlightChunks = maxInFlightChunks;
+        this.chunkPermits = new Semaphore(maxInFlightChunks);
+        this.eventSink = eventSink;
+        int partitions = snapshot.partitionCount();
+        this.differs = new StockDiffer[partitions];
+        this.workers = new ExecutorService[partitions];
+        for (int i = 0; i < partitions; i++) {
+            differs[i] = new StockDiffer(snapshot.partition(i), snapshotCheckpoint);
+            String name = "stock-diff-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Scatter a chunk over the partition workers. Blocks while {@code maxInFlightChunks}
+     * earlier chunks are still being diffed.
+     */
+    public void submit(List<StockSnapshotDTO> chunk) throws InterruptedException {
+        chunkPermits.acquire();
+        List<List<StockSnapshotDTO>> byPartition = new ArrayList<>(differs.length);
+        for (int i = 0; i < differs.length; i++) {
+            byPartition.add(new ArrayList<>(chunk.size() / differs.length + 16));
+        }
+        for (StockSnapshotDTO row : chunk) {
+            byPartition.get(snapshot.partitionOf(row.getId())).add(row);
+        }
+        @SuppressWarnings("unchecked")
+        CompletableFuture<PartitionResult>[] tasks = new CompletableFuture[differs.length];
+        for (int i = 0; i < differs.length; i++) {
+            StockDiffer differ = differs[i];
+            List<StockSnapshotDTO> rows = byPartition.get(i);
+            tasks[i] = CompletableFuture.supplyAsync(() -> {
+                List<StockChangeEventDTO> events = new ArrayList<>();
+                return new PartitionResult(differ.diff(rows, events, null), events);
+            }, workers[i]);
+        }
+        CompletableFuture<LocalDateTime> merged = CompletableFuture.allOf(tasks)
+                .thenApply(ignored -> mergeAndPublish(tasks))
+                .whenComplete((highest, error) -> chunkPermits.release());
+        pendingChunks.add(merged);
+    }
+
+    /**
+     * Wait for every chunk submitted during this tick.
+     *
+     * @return the highest modification timestamp among {@code highest} and all diffed rows
+     */
+    public LocalDateTime awaitTick(LocalDateTime highest) throws InterruptedException, ExecutionException {
+        try {
+            for (CompletableFuture<LocalDateTime> chunk : pendingChunks) {
+                LocalDateTime chunkHighest = chunk.get();
+                if (chunkHighest != null && (highest == null || chunkHighest.isAfter(highest))) {
+                    highest = chunkHighest;
+                }
+            }
+            return highest;
+        } finally {
+            pendingChunks.clear();
+        }
+    }
+
+    /**
+     * Wait for the chunks of a tick that failed before {@link #awaitTick}, ignoring their
+     * outcome, so the workers are idle and the next tick starts with nothing pending.
+     * Does nothing after {@code awaitTick}.
+     */
+    public void abortTick() {
+        try {
+            CompletableFuture.allOf(pendingChunks.toArray(CompletableFuture[]::new)).exceptionally(error -> null).join();
+        } finally {
+            pendingChunks.clear();
+        }
+    }
+
+    public int getInFlightChunks() {
+        return maxInFlightChunks - chunkPermits.availablePermits();
+    }
+
+    public void shutdown() throws InterruptedException {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        for (ExecutorService worker : workers) {
+            worker.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private LocalDateTime mergeAndPublish(CompletableFuture<PartitionResult>[] tasks) {
+        LocalDateTime highest = null;
+        List<StockChangeEventDTO> events = new ArrayList<>();
+        for (CompletableFuture<PartitionResult> task : tasks) {
+            PartitionResult result = task.join();
+            events.addAll(result.events());
+            if (result.highest() != null && (highest == null || result.highest().isAfter(highest))) {
+                highest = result.highest();
+            }
+        }
+        eventSink.accept(events);
+        return highest;
+    }
+
+    private record PartitionResult(LocalDateTime highest, List<StockChangeEventDTO> events) {
+    }
+}
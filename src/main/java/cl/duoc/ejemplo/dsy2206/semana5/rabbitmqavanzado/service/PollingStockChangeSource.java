@@ -0,0 +1,26 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Queries PRODUCT on every tick: all active rows for a full scan, otherwise the rows whose
+ * LAST_PRICE_UPDATE moved past the watermark. Needs nothing beyond the table itself.
+ */
+public class PollingStockChangeSource implements StockChangeSource {
+
+    private final ProductRepository productRepository;
+
+    public PollingStockChangeSource(ProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    @Override
+    public Stream<StockSnapshotDTO> open(LocalDateTime since, int fetchSize, ShardOwnership ownership) {
+        return productRepository.streamActiveStockSnapshots(since, fetchSize,
+                ownership != null ? ownership.shardCount() : 1, ownership != null ? ownership.ownedShards() : null);
+    }
+}
@@ -0,0 +1,111 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.LongLongHashMap;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+/**
+ * The filter step of the price monitor: compares scanned prices with the last notified
+ * price of each product and emits an event once the difference reaches the threshold.
+ * <p>
+ * Prices are compared as cents in a primitive map, and the threshold test is the cross
+ * multiplication {@code |new - old| * 10000 >= thresholdBasisPoints * old}, so rows below
+ * the threshold cost no division and no allocation beyond reading the price. Changes below
+ * the threshold keep the old baseline, so a price drifting in small steps is reported once
+ * the accumulated change is large enough. A row whose price did not move (a stock update
+ * also bumps LAST_PRICE_UPDATE) is skipped, which also makes re-read rows harmless.
+ * Not thread-safe.
+ */
+public class PriceChangeDetector {
+
+    private final LongLongHashMap notifiedCents;
+    private final long thresholdBasisPoints;
+
+    /**
+     * @param thresholdPercent minimum change, in percent of the old price, e.g. 5.0
+     */
+    public PriceChangeDetector(BigDecimal thresholdPercent, int expectedProducts) {
+        this.thresholdBasisPoints = thresholdPercent.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+        this.notifiedCents = new LongLongHashMap(expectedProducts);
+    }
+
+    /**
+     * Record the current prices as the baseline without emitting anything.
+     */
+    public void seed(List<StockSnapshotDTO> rows) {
+        for (StockSnapshotDTO row : rows) {
+            if (row.getPrice() != null) {
+                notifiedCents.put(row.getId(), SalesTotalDTO.toCents(row.getPrice()));
+            }
+        }
+    }
+
+    /**
+     * Append an event to {@code events} for every row whose price moved at least the
+     * threshold away from its baseline, and make that price the new baseline.
+     */
+    public void detect(List<StockSnapshotDTO> rows, List<PriceChangeEventDTO> events) {
+        for (StockSnapshotDTO row : rows) {
+            if (row.getPrice() == null) {
+                continue;
+            }
+            long productId = row.getId();
+            long newCents = SalesTotalDTO.toCents(row.getPrice());
+            long oldCents = notifiedCents.get(productId);
+            if (oldCents == LongLongHashMap.MISSING) {
+                // Created after the baseline scan: nothing to compare with yet
+                notifiedCents.put(productId, newCents);
+                continue;
+            }
+            if (newCents == oldCents || !exceedsThreshold(oldCents, newCents)) {
+                continue;
+            }
+            notifiedCents.put(productId, newCents);
+            events.add(PriceChangeEventDTO.builder()
+                    .productId(productId)
+                    .productName(row.getName())
+                    .productCategory(row.getCategory())
+                    .oldPrice(BigDecimal.valueOf(oldCents, 2))
+                    .newPrice(BigDecimal.valueOf(newCents, 2))
+                    .changeAmount(BigDecimal.valueOf(newCents - oldCents, 2))
+                    .changePercentage(oldCents != 0 ? (newCents - oldCents) * 100.0 / oldCents : 100.0)
+                    .changeTimestamp(row.getLastUpdate() != null ? row.getLastUpdate() : LocalDateTime.now())
+                    .changeReason(newCents > oldCents ? "PRICE_INCREASE" : "PRICE_DECREASE")
+                    .build());
+        }
+    }
+
+    /**
+     * Put back the baselines of events that could not be published, so the next scan
+     * that reads those rows reports them again.
+     */
+    public void restore(List<PriceChangeEventDTO> unpublished) {
+        for (PriceChangeEventDTO event : unpublished) {
+            notifiedCents.put(event.getProductId(), SalesTotalDTO.toCents(event.getOldPrice()));
+        }
+    }
+
+    /**
+     * Forget the baselines of products that no longer match {@code keep}; if they match
+     * again later, their next scan records a fresh baseline instead of diffing a stale one.
+     */
+    public void retain(LongPredicate keep) {
+        notifiedCents.retainKeys(keep);
+    }
+
+    public int trackedProducts() {
+        return notifiedCents.size();
+    }
+
+    private boolean exceedsThreshold(long oldCents, long newCents) {
+        // Prices are NUMBER(10,2): cents stay below 1e10, so the products fit in a long
+        return Math.abs(newCents - oldCents) * 10_000 >= thresholdBasisPoints * Math.abs(oldCents);
+    }
+}
@@ -0,0 +1,168 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Publishes price changes to the price-change exchange. The first scan reads every active
+ * product to seed the baseline prices; after that each scan only reads the rows whose
+ * LAST_PRICE_UPDATE moved past the watermark, so its cost follows the number of updated
+ * rows rather than the catalog size.
+ * <p>
+ * In a cluster each node scans only the shards it owns, like the stock poll, so every
+ * price change is published once. An ownership change triggers a full scan of the owned
+ * shards: products of newly acquired shards get a baseline without being reported.
+ */
+@Service
+@ConditionalOnProperty(value = "price.monitoring.enabled", havingValue = "true")
+public class PriceChangeMonitoringService {
+    private static final Logger logger = LoggerFactory.getLogger(PriceChangeMonitoringService.class);
+
+    private final ProductRepository productRepository;
+    private final RabbitTemplate rabbitTemplate;
+    private final PriceChangeDetector priceChangeDetector;
+    private final ClusterMembership clusterMembership;
+    private final Timer scanTimer;
+    private final Counter publishedCounter;
+
+    @Value("${price.monitoring.notification-enabled:true}")
+    private boolean notificationEnabled;
+
+    @Value("${price.monitoring.watermark-overlap:5000}")
+    private long watermarkOverlapMs;
+
+    @Value("${price.monitoring.batch-size:200}")
+    private int batchSize;
+
+    @Value("${stock.monitoring.fetch-size:500}")
+    private int fetchSize;
+
+    // Highest LAST_PRICE_UPDATE seen so far; null until the baseline scan
+    private LocalDateTime watermark;
+    // Shards scanned by this node; null when clustering is off
+    private ShardOwnership ownership;
+
+    public PriceChangeMonitoringService(ProductRepository productRepository, RabbitTemplate rabbitTemplate, MeterRegistry meterRegistry,
+            ObjectProvider<ClusterMembership> clusterMembership,
+            @Value("${price.monitoring.change-threshold:5.0}") BigDecimal changeThresholdPercent,
+            @Value("${stock.monitoring.snapshot-store.expected-products:100000}") int expectedProducts) {
+        this.productRepository = productRepository;
+        this.rabbitTemplate = rabbitTemplate;
+        this.priceChangeDetector = new PriceChangeDetector(changeThresholdPercent, expectedProducts);
+        this.clusterMembership = clusterMembership.getIfAvailable();
+        this.scanTimer = Timer.builder("price.monitor.scan")
+                .description("Duration of a price change scan").register(meterRegistry);
+        this.publishedCounter = Counter.builder("price.events.published")
+                .description("Price change events sent to the price-change exchange").register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${price.monitoring.scan-interval:30000}")
+    @Transactional(readOnly = true)
+    public void scanPriceChanges() {
+        long start = System.nanoTime();
+        try {
+            boolean seeding = watermark == null;
+            boolean fullScan = seeding;
+            if (clusterMembership != null) {
+                ShardOwnership current = clusterMembership.currentOwnership();
+                if (!current.equals(ownership)) {
+                    ownership = current;
+                    priceChangeDetector.retain(current::owns);
+                    fullScan = true;
+                }
+                if (ownership.isEmpty()) {
+                    logger.debug("Stock monitor node {} owns no shards, skipping price scan", clusterMembership.getNodeId());
+                    return;
+                }
+            }
+            // Re-read a small overlap so rows committed late with an older timestamp are not missed;
+            // the detector ignores rows whose price did not move since the last notification
+            LocalDateTime since = fullScan ? null : watermark.minusNanos(watermarkOverlapMs * 1_000_000L);
+            LocalDateTime highest = watermark;
+            long rows = 0;
+            int published = 0;
+            try (Stream<StockSnapshotDTO> snapshots = productRepository.streamActiveStockSnapshots(since, fetchSize,
+                    ownership != null ? ownership.shardCount() : 1, ownership != null ? ownership.ownedShards() : null)) {
+                Iterator<StockSnapshotDTO> iterator = snapshots.iterator();
+                List<StockSnapshotDTO> chunk = new ArrayList<>(batchSize);
+                List<PriceChangeEventDTO> events = new ArrayList<>(batchSize);
+                while (iterator.hasNext()) {
+                    StockSnapshotDTO row = iterator.next();
+                    if (row.getLastUpdate() != null && (highest == null || row.getLastUpdate().isAfter(highest))) {
+                        highest = row.getLastUpdate();
+                    }
+                    chunk.add(row);
+                    if (chunk.size() == batchSize || !iterator.hasNext()) {
+                        rows += chunk.size();
+                        if (seeding) {
+                            priceChangeDetector.seed(chunk);
+                        } else {
+                            priceChangeDetector.detect(chunk, events);
+                        }
+                        chunk.clear();
+                        if (events.size() >= batchSize || (!iterator.hasNext() && !events.isEmpty())) {
+                            published += publish(events);
+                            events.clear();
+                        }
+                    }
+                }
+            }
+            watermark = highest != null ? highest : LocalDateTime.now();
+            logger.debug("Price scan finished: {} rows read ({}), {} price changes published, watermark {}",
+                    rows, seeding ? "baseline" : "incremental", published, watermark);
+        } catch (Exception e) {
+            logger.error("Error during price monitoring scan: {}", e.getMessage(), e);
+        } finally {
+            scanTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public int getTrackedProductCount() {
+        return priceChangeDetector.trackedProducts();
+    }
+
+    private int publish(List<PriceChangeEventDTO> events) {
+        if (!notificationEnabled) {
+            logger.debug("Price change notifications are disabled. Skipping {} notifications", events.size());
+            return 0;
+        }
+        try {
+            // invoke() pins one channel for the whole batch instead of checking one out per message
+            rabbitTemplate.invoke(operations -> {
+                for (PriceChangeEventDTO event : events) {
+                    operations.convertAndSend(RabbitMQConfig.PRICE_CHANGE_EXCHANGE, RabbitMQConfig.PRICE_CHANGE_ROUTING_KEY, event);
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // The watermark does not advance either, so the next scan detects these changes again
+            priceChangeDetector.restore(events);
+            throw e;
+        }
+        publishedCounter.increment(events.size());
+        logger.info("Sent {} price change notifications", events.size());
+        return events.size();
+    }
+}
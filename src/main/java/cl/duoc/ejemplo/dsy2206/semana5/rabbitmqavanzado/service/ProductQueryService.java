@@ -0,0 +1,32 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductPageDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+
+public interface ProductQueryService {
+
+	/**
+	 * @return the product, or null if it does not exist
+	 */
+	Product findProduct(Long id);
+
+	List<Product> findActiveProducts();
+
+	List<Product> findActiveProductsByCategory(String category);
+
+	/**
+	 * @param category only this category, or null for all active products
+	 * @param after    cursor returned with the previous page, or null for the first page
+	 */
+	ProductPageDTO findActiveProductPage(String category, Long after, int limit);
+
+	/**
+	 * Feed every active product (of {@code category}, if not null) to {@code sink} in id
+	 * order while the rows are scrolled, without materializing the result.
+	 */
+	void streamActiveProducts(String category, Consumer<ProductSummaryDTO> sink);
+}
@@ -0,0 +1,16 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import java.util.List;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator.Mode;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator.Span;
+
+public interface SalesAggregationService extends StockChangeObserver {
+
+	List<SalesTotalDTO> getTopProducts(Span span, Mode mode, int limit);
+
+	List<SalesTotalDTO> getCategoryTotals(Span span, Mode mode);
+
+	SalesTotalDTO getCategoryTotal(Span span, Mode mode, String category);
+}
@@ -0,0 +1,259 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Real-time units and revenue per product and per category over 1m, 5m and 1h windows,
+ * both sliding (the last span, in twelfths) and tumbling (the current clock-aligned span).
+ * <p>
+ * Every window keeps running totals in {@link LongAdder} pairs, so concurrent diff workers
+ * record without locking and a category lookup is a single map read. Sliding totals are
+ * maintained incrementally: each time slot also remembers its own deltas, which are
+ * subtracted when the slot falls out of the window. Top-N rankings are sorted at most once
+ * per {@code rankingRefreshMs} and served from that snapshot in between; a snapshot keeps
+ * the best {@link #MAX_RANKED} products only. Expired slots are dropped lazily by the
+ * next recording or read, so nothing has to run on a timer.
+ * <p>
+ * Running totals keep one entry per product that ever sold, bounded by the catalog size.
+ */
+public class SalesWindowAggregator {
+
+    public enum Span {
+        ONE_MINUTE("1m", 60_000L),
+        FIVE_MINUTES("5m", 300_000L),
+        ONE_HOUR("1h", 3_600_000L);
+
+        private final String label;
+        private final long millis;
+
+        Span(String label, long millis) {
+            this.label = label;
+            this.millis = millis;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public static Span fromLabel(String label) {
+            for (Span span : values()) {
+                if (span.label.equals(label)) {
+                    return span;
+                }
+            }
+            throw new IllegalArgumentException("Unknown window " + label + ", expected 1m, 5m or 1h");
+        }
+    }
+
+    public enum Mode {
+        SLIDING, TUMBLING
+    }
+
+    /** Longest product ranking served; larger top-N limits get this many entries. */
+    public static final int MAX_RANKED = 1000;
+
+    private static final int SLOTS_PER_WINDOW = 12;
+
+    private final LongSupplier clock;
+    private final long rankingRefreshMs;
+    private final Map<Span, Window> windows = new EnumMap<>(Span.class);
+
+    public SalesWindowAggregator(LongSupplier clock, long rankingRefreshMs) {
+        this.clock = clock;
+        this.rankingRefreshMs = rankingRefreshMs;
+        for (Span span : Span.values()) {
+            windows.put(span, new Window(span.millis, clock.getAsLong()));
+        }
+    }
+
+    public void record(List<StockChangeEventDTO> events) {
+        long now = clock.getAsLong();
+        for (Window window : windows.values()) {
+            window.record(events, now);
+        }
+    }
+
+    public SalesTotalDTO categoryTotal(Span span, Mode mode, String category) {
+        Counter counter = windows.get(span).categories(mode, clock.getAsLong()).get(category);
+        return counter != null ? counter.toDTO(category) : SalesTotalDTO.fromCents(category, 0, 0);
+    }
+
+    public List<SalesTotalDTO> categoryTotals(Span span, Mode mode) {
+        return ranked(windows.get(span).categories(mode, clock.getAsLong()), Integer.MAX_VALUE);
+    }
+
+    public List<SalesTotalDTO> topProducts(Span span, Mode mode, int limit) {
+        List<SalesTotalDTO> ranking = windows.get(span).productRanking(mode, clock.getAsLong());
+        return ranking.subList(0, Math.min(limit, ranking.size()));
+    }
+
+    private static <K> List<SalesTotalDTO> ranked(Map<K, Counter> totals, int limit) {
+        List<SalesTotalDTO> ranking = new ArrayList<>(totals.size());
+        totals.forEach((key, counter) -> {
+            SalesTotalDTO total = counter.toDTO(String.valueOf(key));
+            if (total.getUnits() > 0) {
+                ranking.add(total);
+            }
+        });
+        ranking.sort(Comparator.comparing(SalesTotalDTO::getRevenue).thenComparingLong(SalesTotalDTO::getUnits).reversed());
+        return ranking.size() > limit ? new ArrayList<>(ranking.subList(0, limit)) : ranking;
+    }
+
+    private final class Window {
+
+        private final long widthMs;
+        private final long slotMs;
+        private final AtomicReferenceArray<Slot> ring = new AtomicReferenceArray<>(SLOTS_PER_WINDOW);
+        private final Map<Long, Counter> slidingProducts = new ConcurrentHashMap<>();
+        private final Map<String, Counter> slidingCategories = new ConcurrentHashMap<>();
+        private final AtomicReference<Slot> tumbling;
+        private long advancedTo;
+        private volatile Ranking slidingRanking;
+        private volatile Ranking tumblingRanking;
+
+        Window(long widthMs, long now) {
+            this.widthMs = widthMs;
+            this.slotMs = widthMs / SLOTS_PER_WINDOW;
+            this.advancedTo = now / slotMs - 1;
+            this.tumbling = new AtomicReference<>(new Slot(now / widthMs));
+        }
+
+        void record(List<StockChangeEventDTO> events, long now) {
+            long epoch = now / slotMs;
+            Slot slot = ring.get(index(epoch));
+            if (slot == null || slot.epoch != epoch) {
+                advance(now);
+                slot = ring.get(index(epoch));
+            }
+            Slot period = tumblingSlot(now);
+            for (StockChangeEventDTO event : events) {
+                long units = event.getQuantityChanged();
+                long cents = SalesTotalDTO.toCents(event.getSaleTotal());
+                String category = event.getProductCategory();
+                slot.add(event.getProductId(), category, units, cents);
+                period.add(event.getProductId(), category, units, cents);
+                add(slidingProducts, event.getProductId(), units, cents);
+                if (category != null) {
+                    add(slidingCategories, category, units, cents);
+                }
+            }
+        }
+
+        synchronized void advance(long now) {
+            long current = now / slotMs;
+            for (long epoch = Math.max(advancedTo + 1, current - SLOTS_PER_WINDOW + 1); epoch <= current; epoch++) {
+                Slot expired = ring.getAndSet(index(epoch), new Slot(epoch));
+                if (expired != null) {
+                    // A writer still holding the expired slot would have to stall for a whole window to be lost
+                    expired.products.forEach((productId, counter) -> subtract(slidingProducts, productId, counter));
+                    expired.categories.forEach((category, counter) -> subtract(slidingCategories, category, counter));
+                }
+            }
+            advancedTo = Math.max(advancedTo, current);
+        }
+
+        Map<String, Counter> categories(Mode mode, long now) {
+            if (mode == Mode.TUMBLING) {
+                return tumblingSlot(now).categories;
+            }
+            advance(now);
+            return slidingCategories;
+        }
+
+        List<SalesTotalDTO> productRanking(Mode mode, long now) {
+            Ranking ranking = mode == Mode.TUMBLING ? tumblingRanking : slidingRanking;
+            if (ranking != null && now - ranking.computedAt < rankingRefreshMs) {
+                return ranking.products;
+            }
+            Map<Long, Counter> products;
+            if (mode == Mode.TUMBLING) {
+                products = tumblingSlot(now).products;
+            } else {
+                advance(now);
+                products = slidingProducts;
+            }
+            ranking = new Ranking(now, ranked(products, MAX_RANKED));
+            if (mode == Mode.TUMBLING) {
+                tumblingRanking = ranking;
+            } else {
+                slidingRanking = ranking;
+            }
+            return ranking.products;
+        }
+
+        private Slot tumblingSlot(long now) {
+            long period = now / widthMs;
+            Slot current = tumbling.get();
+            while (current.epoch < period) {
+                Slot next = new Slot(period);
+                if (tumbling.compareAndSet(current, next)) {
+                    return next;
+                }
+                current = tumbling.get();
+            }
+            return current;
+        }
+
+        private int index(long epoch) {
+            return (int) Math.floorMod(epoch, (long) SLOTS_PER_WINDOW);
+        }
+    }
+
+    /** Per-key deltas of one time slot, or running totals of one tumbling period. */
+    private static final class Slot {
+
+        private final long epoch;
+        private final Map<Long, Counter> products = new ConcurrentHashMap<>();
+        private final Map<String, Counter> categories = new ConcurrentHashMap<>();
+
+        Slot(long epoch) {
+            this.epoch = epoch;
+        }
+
+        void add(Long productId, String category, long units, long cents) {
+            SalesWindowAggregator.add(products, productId, units, cents);
+            if (category != null) {
+                SalesWindowAggregator.add(categories, category, units, cents);
+            }
+        }
+    }
+
+    private static <K> void add(Map<K, Counter> totals, K key, long units, long cents) {
+        Counter counter = totals.computeIfAbsent(key, ignored -> new Counter());
+        counter.units.add(units);
+        counter.cents.add(cents);
+    }
+
+    private static <K> void subtract(Map<K, Counter> totals, K key, Counter expired) {
+        Counter counter = totals.get(key);
+        if (counter != null) {
+            counter.units.add(-expired.units.sum());
+            counter.cents.add(-expired.cents.sum());
+        }
+    }
+
+    private static final class Counter {
+
+        private final LongAdder units = new LongAdder();
+        private final LongAdder cents = new LongAdder();
+
+        SalesTotalDTO toDTO(String key) {
+            return SalesTotalDTO.fromCents(key, units.sum(), cents.sum());
+        }
+    }
+
+    private record Ranking(long computedAt, List<SalesTotalDTO> products) {
+    }
+}
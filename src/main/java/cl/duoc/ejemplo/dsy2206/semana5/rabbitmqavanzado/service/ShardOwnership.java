@@ -0,0 +1,112 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.SnapshotHashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The slice of the product id space a node monitors. Product {@code id} belongs to
+ * shard {@code MOD(id, shardCount)}, the same expression the snapshot query filters on,
+ * and each shard is owned by exactly one live node.
+ */
+public final class ShardOwnership {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final int shardCount;
+    private final boolean[] owned;
+    private final List<Integer> ownedShards;
+
+    private ShardOwnership(int shardCount, boolean[] owned) {
+        this.shardCount = shardCount;
+        this.owned = owned;
+        List<Integer> shards = new ArrayList<>();
+        for (int shard = 0; shard < shardCount; shard++) {
+            if (owned[shard]) {
+                shards.add(shard);
+            }
+        }
+        this.ownedShards = Collections.unmodifiableList(shards);
+    }
+
+    public static ShardOwnership none(int shardCount) {
+        return new ShardOwnership(shardCount, new boolean[shardCount]);
+    }
+
+    /**
+     * Rendezvous (highest random weight) assignment: every shard goes to the member with
+     * the highest hash of (member, shard). All nodes compute the same result from the same
+     * member set, and a join or leave only moves the shards won or lost by that member.
+     */
+    public static ShardOwnership rendezvous(String nodeId, Collection<String> members, int shardCount) {
+        boolean[] owned = new boolean[shardCount];
+        long self = seed(nodeId);
+        long[] seeds = members.stream().mapToLong(ShardOwnership::seed).toArray();
+        for (int shard = 0; shard < shardCount; shard++) {
+            long selfScore = score(self, shard);
+            boolean wins = true;
+            for (long seed : seeds) {
+                long score = score(seed, shard);
+                // Ties are broken on the seed so exactly one member wins
+                if (seed != self && (score > selfScore || (score == selfScore && seed > self))) {
+                    wins = false;
+                    break;
+                }
+            }
+            owned[shard] = wins;
+        }
+        return new ShardOwnership(shardCount, owned);
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public int shardOf(long productId) {
+        return (int) Math.floorMod(productId, (long) shardCount);
+    }
+
+    public boolean owns(long productId) {
+        return owned[shardOf(productId)];
+    }
+
+    public List<Integer> ownedShards() {
+        return ownedShards;
+    }
+
+    public boolean isEmpty() {
+        return ownedShards.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof ShardOwnership that && shardCount == that.shardCount && Arrays.equals(owned, that.owned);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(owned);
+    }
+
+    @Override
+    public String toString() {
+        return ownedShards.size() + "/" + shardCount + " shards " + ownedShards;
+    }
+
+    private static long seed(String nodeId) {
+        long h = 0;
+        for (byte b : nodeId.getBytes(StandardCharsets.UTF_8)) {
+            h = 31 * h + b;
+        }
+        return SnapshotHashing.mix(h);
+    }
+
+    private static long score(long seed, int shard) {
+        return SnapshotHashing.mix(seed + (shard + 1) * GOLDEN_GAMMA);
+    }
+}
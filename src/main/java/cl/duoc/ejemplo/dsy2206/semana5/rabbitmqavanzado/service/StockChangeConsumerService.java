@@ -0,0 +1,19 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import java.util.List;
+
+import org.springframework.amqp.core.Message;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+public interface StockChangeConsumerService {
+
+	void recibirLoteCambiosStock(List<Message> mensajes);
+
+	void recibirCambiosStock(List<StockChangeEventDTO> eventos);
+
+	List<SalesTotalDTO> getProductTotals();
+
+	List<SalesTotalDTO> getCategoryTotals();
+}
@@ -1,77 +1,380 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
 
-import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeNotificationService;
-
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
-import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
-import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.PartitionedSnapshotStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.SnapshotCheckpoint;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.StockSnapshotStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
+import java.lang.management.ManagementFactory;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
 @Service
 @ConditionalOnProperty(value = "stock.monitoring.enabled", havingValue = "true", matchIfMissing = true)
 public class StockChangeMonitoringService {
     private static final Logger logger = LoggerFactory.getLogger(StockChangeMonitoringService.class);
 
-    private final ProductRepository productRepository;
+    // Matches Boot's default graceful shutdown phase timeout
+    private static final long SHUTDOWN_POLL_WAIT_MS = 30_000;
+
+    private final StockChangeSource stockChangeSource;
     private final StockChangeNotificationService stockChangeNotificationService;
-    private final Map<Long, Integer> lastKnownQuantities = new ConcurrentHashMap<>();
+    private final StockSnapshotStore lastKnownQuantities;
+    private final SnapshotCheckpoint snapshotCheckpoint;
+    private final StockDiffer stockDiffer;
+    private final PartitionedStockDiffer partitionedStockDiffer;
+    private final ClusterMembership clusterMembership;
+    private final AdaptivePollInterval pollInterval;
+    private final com.sun.management.ThreadMXBean threadMXBean;
+
+    // Registered once with fixed tags, so a tick records into them without any meter lookup
+    private final Timer fullPollTimer;
+    private final Timer incrementalPollTimer;
+    private final Timer queryTimer;
+    private final Timer diffTimer;
+    private final Timer publishTimer;
+    private final Counter rowsCounter;
+    private final Counter changesCounter;
+    // Nanoseconds spent in the current tick's phases; only touched by the poll thread
+    private long diffNanos;
+    private long publishNanos;
+    // Changes detected by the current tick, also counted from partition workers
+    private final AtomicLong tickChanges = new AtomicLong();
+
+    @Value("${stock.monitoring.incremental.enabled:true}")
+    private boolean incrementalEnabled;
+
+    @Value("${stock.monitoring.incremental.reconciliation-interval:600000}")
+    private long reconciliationIntervalMs;
 
-    @Value("${stock.monitoring.poll-interval:30000}")
-    private long pollIntervalMs;
+    @Value("${stock.monitoring.incremental.watermark-overlap:5000}")
+    private long watermarkOverlapMs;
 
-    private LocalDateTime lastPollTime;
+    @Value("${stock.monitoring.fetch-size:500}")
+    private int fetchSize;
 
-    public StockChangeMonitoringService(ProductRepository productRepository, StockChangeNotificationService stockChangeNotificationService) {
-        this.productRepository = productRepository;
+    @Value("${stock.monitoring.chunk-size:1000}")
+    private int chunkSize;
+
+    @Value("${stock.monitoring.checkpoint.interval:10000}")
+    private long checkpointIntervalMs;
+
+    // Highest LAST_PRICE_UPDATE seen so far; null until the first full scan seeds it
+    private LocalDateTime watermark;
+    private long lastReconciliationMillis;
+    private long lastCheckpointMillis;
+    private volatile long lastPollAllocatedBytes = -1;
+    // Shards polled last tick when clustered; a change prunes the snapshot and forces a full scan
+    private ShardOwnership ownership;
+    private final AtomicBoolean pollInProgress = new AtomicBoolean();
+
+    public StockChangeMonitoringService(StockChangeSource stockChangeSource, StockChangeNotificationService stockChangeNotificationService,
+            StockSnapshotStore stockSnapshotStore, ObjectProvider<SnapshotCheckpoint> snapshotCheckpoint,
+            ObjectProvider<ClusterMembership> clusterMembership, AdaptivePollInterval stockPollInterval,
+            MeterRegistry meterRegistry, @Value("${stock.monitoring.diff.max-in-flight-chunks:4}") int maxInFlightChunks) {
+        this.stockChangeSource = stockChangeSource;
         this.stockChangeNotificationService = stockChangeNotificationService;
-        this.lastPollTime = LocalDateTime.now().minusMinutes(5);
+        this.lastKnownQuantities = stockSnapshotStore;
+        this.snapshotCheckpoint = snapshotCheckpoint.getIfAvailable();
+        this.clusterMembership = clusterMembership.getIfAvailable();
+        this.pollInterval = stockPollInterval;
+        this.stockDiffer = new StockDiffer(stockSnapshotStore, this.snapshotCheckpoint);
+        this.partitionedStockDiffer = stockSnapshotStore instanceof PartitionedSnapshotStore partitioned && partitioned.partitionCount() > 1
+                ? new PartitionedStockDiffer(partitioned, this.snapshotCheckpoint, maxInFlightChunks, this::publish)
+                : null;
+        this.threadMXBean = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() ? bean : null;
+        this.fullPollTimer = pollTimer(meterRegistry, "full");
+        this.incrementalPollTimer = pollTimer(meterRegistry, "incremental");
+        this.queryTimer = phaseTimer(meterRegistry, "query");
+        this.diffTimer = phaseTimer(meterRegistry, "diff");
+        this.publishTimer = phaseTimer(meterRegistry, "publish");
+        this.rowsCounter = Counter.builder("stock.monitor.poll.rows")
+                .description("Product rows read by stock polls").register(meterRegistry);
+        this.changesCounter = Counter.builder("stock.monitor.poll.changes")
+                .description("Stock decreases detected by stock polls").register(meterRegistry);
+        Gauge.builder("stock.monitor.snapshot.size", stockSnapshotStore, StockSnapshotStore::size)
+                .description("Products in the last known quantities snapshot").register(meterRegistry);
+        Gauge.builder("stock.monitor.snapshot.bytes", stockSnapshotStore, StockSnapshotStore::memoryFootprintBytes)
+                .description("Memory held by the last known quantities snapshot").baseUnit("bytes").register(meterRegistry);
+        Gauge.builder("stock.monitor.poll.interval", stockPollInterval, AdaptivePollInterval::currentMs)
+                .description("Current delay between stock polls").baseUnit("milliseconds").register(meterRegistry);
     }
 
-    @Scheduled(fixedRateString = "${stock.monitoring.poll-interval:30000}")
+    private static Timer pollTimer(MeterRegistry meterRegistry, String scan) {
+        return Timer.builder("stock.monitor.poll").tag("scan", scan)
+                .description("Duration of a whole stock poll").register(meterRegistry);
+    }
+
+    /**
+     * Time spent in one phase of a poll, recorded once per poll. With parallel diffing the
+     * diff phase is the time the poll thread waits for the workers, and includes publishing.
+     */
+    private static Timer phaseTimer(MeterRegistry meterRegistry, String phase) {
+        return Timer.builder("stock.monitor.poll.phase").tag("phase", phase)
+                .description("Time a stock poll spends in one phase").register(meterRegistry);
+    }
+
+    /**
+     * Warm-load the last checkpoint so the first poll diffs against the pre-restart
+     * quantities and emits the sales that happened while the service was down.
+     */
+    @PostConstruct
+    public void restoreSnapshot() {
+        if (snapshotCheckpoint == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            watermark = snapshotCheckpoint.load(lastKnownQuantities);
+            logger.info("Restored stock snapshot checkpoint: {} products, watermark {} ({} ms)",
+                    lastKnownQuantities.size(), watermark, (System.nanoTime() - start) / 1_000_000);
+        } catch (Exception e) {
+            logger.warn("Could not restore stock snapshot checkpoint, starting from an empty baseline: {}", e.getMessage());
+            lastKnownQuantities.clear();
+            watermark = null;
+        }
+    }
+
+    /**
+     * Waits for a running poll to finish and keeps the poll flag, so no later tick can
+     * touch the store while it is written out. If the poll does not finish in time the
+     * checkpoint is skipped; the previous one plus the watermark overlap stay consistent.
+     * The partition workers are shut down either way.
+     */
+    @PreDestroy
+    public void checkpointOnShutdown() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_POLL_WAIT_MS);
+        boolean pollFinished;
+        while (!(pollFinished = pollInProgress.compareAndSet(false, true)) && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+        if (partitionedStockDiffer != null) {
+            partitionedStockDiffer.shutdown();
+        }
+        if (pollFinished) {
+            writeCheckpoint();
+        } else {
+            logger.warn("Stock poll still running after {} ms, skipping the shutdown checkpoint", SHUTDOWN_POLL_WAIT_MS);
+        }
+    }
+
+    /**
+     * One poll, run by {@code StockPollScheduler} after the delay the previous poll left in
+     * the {@link AdaptivePollInterval}. Only completed polls adjust it; skipped or failed
+     * ones leave the interval as it was.
+     */
     @Transactional(readOnly = true)
     public void monitorStockChanges() {
         if (!stockChangeNotificationService.isNotificationsEnabled()) {
             logger.debug("Stock monitoring is disabled, skipping poll");
             return;
         }
+        if (!pollInProgress.compareAndSet(false, true)) {
+            logger.warn("Previous stock poll still running, skipping this tick");
+            return;
+        }
+        long allocatedBefore = allocatedBytes();
+        long startNanos = System.nanoTime();
+        diffNanos = 0;
+        publishNanos = 0;
+        tickChanges.set(0);
         try {
-            logger.debug("Starting stock change monitoring poll");
-            List<Product> products = productRepository.findActiveProducts();
-            for (Product product : products) {
-                int currentQuantity = product.getQuantity();
-                Long productId = product.getId();
-                Integer lastQuantity = lastKnownQuantities.get(productId);
-                if (lastQuantity != null && currentQuantity < lastQuantity) {
-                    int quantityChanged = lastQuantity - currentQuantity;
-                    BigDecimal saleTotal = product.getPrice() != null ? product.getPrice().multiply(BigDecimal.valueOf(quantityChanged)) : BigDecimal.ZERO;
-                    StockChangeEventDTO event = StockChangeEventDTO.builder()
-                        .productId(productId)
-                        .productName(product.getName())
-                        .productCategory(product.getCategory())
-                        .quantityChanged(quantityChanged)
-                        .newQuantity(currentQuantity)
-                        .saleTotal(saleTotal)
-                        .changeTimestamp(LocalDateTime.now())
-                        .build();
-                    stockChangeNotificationService.notifyStockChange(event);
-                    logger.info("Stock decreased for product ID {}: -{} (new quantity: {})", productId, quantityChanged, currentQuantity);
+            long now = System.currentTimeMillis();
+            boolean reconciliation = isReconciliationDue(now);
+            if (clusterMembership != null) {
+                ShardOwnership current = clusterMembership.currentOwnership();
+                if (!current.equals(ownership)) {
+                    logger.info("Stock monitor node {} now owns {}", clusterMembership.getNodeId(), current);
+                    ownership = current;
+                    retainOwnedProducts();
+                    // Newly acquired shards must be seeded even where rows did not move past the watermark
+                    reconciliation = true;
+                }
+                if (ownership.isEmpty()) {
+                    logger.debug("Stock monitor node {} owns no shards, skipping poll", clusterMembership.getNodeId());
+                    return;
+                }
+            }
+            LocalDateTime since = null;
+            if (reconciliation) {
+                logger.debug("Starting full stock reconciliation poll");
+            } else {
+                // Re-read a small overlap so rows committed late with an older timestamp are not missed;
+                // unchanged quantities in the overlap produce no events
+                since = watermark.minusNanos(watermarkOverlapMs * 1_000_000L);
+                logger.debug("Starting incremental stock poll for products updated after {}", since);
+            }
+            LocalDateTime highest = watermark;
+            long rows = 0;
+            try (Stream<StockSnapshotDTO> snapshots = stockChangeSource.open(since, fetchSize, ownership)) {
+                Iterator<StockSnapshotDTO> iterator = snapshots.iterator();
+                List<StockSnapshotDTO> chunk = new ArrayList<>(chunkSize);
+                while (iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() == chunkSize || !iterator.hasNext()) {
+                        rows += chunk.size();
+                        if (partitionedStockDiffer != null) {
+                            long submitStart = System.nanoTime();
+                            partitionedStockDiffer.submit(chunk);
+                            diffNanos += System.nanoTime() - submitStart;
+                            chunk = new ArrayList<>(chunkSize);
+                        } else {
+                            highest = processChunk(chunk, highest);
+                            chunk.clear();
+                        }
+                    }
                 }
-                lastKnownQuantities.put(productId, currentQuantity);
+            }
+            if (partitionedStockDiffer != null) {
+                long awaitStart = System.nanoTime();
+                highest = partitionedStockDiffer.awaitTick(highest);
+                diffNanos += System.nanoTime() - awaitStart;
+            }
+            long tickNanos = System.nanoTime() - startNanos;
+            (reconciliation ? fullPollTimer : incrementalPollTimer).record(tickNanos, TimeUnit.NANOSECONDS);
+            // Whatever the poll thread did not spend diffing or publishing was spent reading rows
+            queryTimer.record(Math.max(0, tickNanos - diffNanos - publishNanos), TimeUnit.NANOSECONDS);
+            diffTimer.record(diffNanos, TimeUnit.NANOSECONDS);
+            publishTimer.record(publishNanos, TimeUnit.NANOSECONDS);
+            rowsCounter.increment(rows);
+            watermark = highest != null ? highest : LocalDateTime.now();
+            stockChangeSource.commit();
+            if (reconciliation) {
+                lastReconciliationMillis = now;
+            }
+            if (snapshotCheckpoint != null && now - lastCheckpointMillis >= checkpointIntervalMs) {
+                writeCheckpoint();
+                lastCheckpointMillis = now;
+            }
+            if (allocatedBefore >= 0) {
+                lastPollAllocatedBytes = allocatedBytes() - allocatedBefore;
+            }
+            logger.debug("Stock poll finished: {} rows read ({}), watermark {}, snapshot {} entries / {} bytes, {} bytes allocated",
+                    rows, reconciliation ? "full" : "incremental", watermark,
+                    lastKnownQuantities.size(), lastKnownQuantities.memoryFootprintBytes(), lastPollAllocatedBytes);
+            long elapsed = System.currentTimeMillis() - now;
+            if (elapsed > pollInterval.currentMs()) {
+                logger.warn("Stock poll took {} ms, longer than the {} ms poll interval", elapsed, pollInterval.currentMs());
+            }
+            long previousInterval = pollInterval.currentMs();
+            if (pollInterval.onPoll(tickChanges.get()) != previousInterval) {
+                logger.debug("Stock poll found {} changes, poll interval now {} ms", tickChanges.get(), pollInterval.currentMs());
             }
         } catch (Exception e) {
             logger.error("Error during stock monitoring poll: {}", e.getMessage(), e);
+        } finally {
+            if (partitionedStockDiffer != null) {
+                // A tick that failed mid-stream still has chunks on the workers
+                partitionedStockDiffer.abortTick();
+            }
+            pollInProgress.set(false);
         }
     }
+
+    public long getEffectivePollIntervalMs() {
+        return pollInterval.currentMs();
+    }
+
+    public int getSnapshotSize() {
+        return lastKnownQuantities.size();
+    }
+
+    public long getSnapshotFootprintBytes() {
+        return lastKnownQuantities.memoryFootprintBytes();
+    }
+
+    /** Bytes allocated by the poll thread during the last completed poll, or -1 if the JVM cannot tell. */
+    public long getLastPollAllocatedBytes() {
+        return lastPollAllocatedBytes;
+    }
+
+    private void writeCheckpoint() {
+        if (snapshotCheckpoint == null) {
+            return;
+        }
+        try {
+            snapshotCheckpoint.checkpoint(lastKnownQuantities, watermark);
+        } catch (Exception e) {
+            logger.error("Failed to checkpoint stock snapshot: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Drop the last known quantities of products in shards this node no longer owns, so
+     * a shard that comes back later is re-seeded instead of diffed against stale values.
+     */
+    private void retainOwnedProducts() {
+        int size = lastKnownQuantities.size();
+        long[] ids = new long[size];
+        int[] quantities = new int[size];
+        int[] kept = { 0 };
+        lastKnownQuantities.forEach((productId, quantity) -> {
+            if (ownership.owns(productId)) {
+                ids[kept[0]] = productId;
+                quantities[kept[0]++] = quantity;
+            }
+        });
+        if (kept[0] == size) {
+            return;
+        }
+        lastKnownQuantities.clear();
+        for (int i = 0; i < kept[0]; i++) {
+            lastKnownQuantities.put(ids[i], quantities[i]);
+        }
+        logger.debug("Dropped {} snapshot entries of shards no longer owned", size - kept[0]);
+    }
+
+    private long allocatedBytes() {
+        return threadMXBean != null ? threadMXBean.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private boolean isReconciliationDue(long now) {
+        return !incrementalEnabled
+                || watermark == null
+                || now - lastReconciliationMillis >= reconciliationIntervalMs;
+    }
+
+    /**
+     * Diff one chunk of rows against the last known quantities, hand the resulting
+     * events to the publishing stage as one batch and return the highest modification
+     * timestamp seen so far.
+     */
+    private LocalDateTime processChunk(List<StockSnapshotDTO> chunk, LocalDateTime highest) {
+        long diffStart = System.nanoTime();
+        List<StockChangeEventDTO> events = new ArrayList<>();
+        highest = stockDiffer.diff(chunk, events, highest);
+        long publishStart = System.nanoTime();
+        diffNanos += publishStart - diffStart;
+        publish(events);
+        publishNanos += System.nanoTime() - publishStart;
+        return highest;
+    }
+
+    private void publish(List<StockChangeEventDTO> events) {
+        // Also called from partition workers, so counted straight into the (thread-safe) counter
+        changesCounter.increment(events.size());
+        tickChanges.addAndGet(events.size());
+        stockChangeNotificationService.notifyStockChanges(events);
+    }
 }
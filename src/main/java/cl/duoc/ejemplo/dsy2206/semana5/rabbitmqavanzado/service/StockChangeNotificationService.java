@@ -2,8 +2,12 @@ package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
 
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
 
+import java.util.List;
+
 public interface StockChangeNotificationService {
     void notifyStockChange(StockChangeEventDTO stockChangeEvent);
+    void notifyStockChanges(List<StockChangeEventDTO> stockChangeEvents);
     void setNotificationsEnabled(boolean enabled);
     boolean isNotificationsEnabled();
+    int getPendingEventCount();
 }
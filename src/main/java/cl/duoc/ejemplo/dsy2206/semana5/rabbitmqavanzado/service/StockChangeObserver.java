@@ -0,0 +1,15 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import java.util.List;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+/**
+ * In-process hook on the stock changes the monitor detects, called with every batch
+ * before it is queued for publishing. Runs on the diff thread, so implementations
+ * must be quick and thread-safe; parallel diff workers call it concurrently.
+ */
+public interface StockChangeObserver {
+
+	void onStockChanges(List<StockChangeEventDTO> stockChangeEvents);
+}
@@ -0,0 +1,29 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+
+import java.time.LocalDateTime;
+import java.util.stream.Stream;
+
+/**
+ * Where a stock monitoring tick reads the rows to diff. A full scan returns every active
+ * product; an incremental tick only has to return (at least) the products whose stock
+ * may have changed since the last committed tick.
+ */
+public interface StockChangeSource {
+
+    /**
+     * Open the rows for one tick. Must be consumed inside a transaction and closed by the caller.
+     *
+     * @param since     watermark of an incremental tick (already minus the overlap), or null for a full scan
+     * @param ownership shards polled by this node, or null when not clustered
+     */
+    Stream<StockSnapshotDTO> open(LocalDateTime since, int fetchSize, ShardOwnership ownership);
+
+    /**
+     * The rows of the last {@link #open} were diffed and published; the next tick
+     * continues after them. Not called when the tick failed, so it is read again.
+     */
+    default void commit() {
+    }
+}
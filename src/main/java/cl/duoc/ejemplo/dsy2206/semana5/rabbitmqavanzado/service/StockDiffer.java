@@ -0,0 +1,73 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.SnapshotCheckpoint;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.StockSnapshotStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The diff step of the stock monitor: compares polled rows with the last known
+ * quantities, emits an event for every decrease and records changed entries for
+ * the checkpoint. Free of Spring and I/O so it can be benchmarked offline.
+ * Not thread-safe; one differ per snapshot store.
+ */
+public class StockDiffer {
+    private static final Logger logger = LoggerFactory.getLogger(StockDiffer.class);
+
+    private final StockSnapshotStore lastKnownQuantities;
+    private final SnapshotCheckpoint snapshotCheckpoint;
+
+    /**
+     * @param snapshotCheckpoint receives changed entries, or null when checkpointing is off
+     */
+    public StockDiffer(StockSnapshotStore lastKnownQuantities, SnapshotCheckpoint snapshotCheckpoint) {
+        this.lastKnownQuantities = lastKnownQuantities;
+        this.snapshotCheckpoint = snapshotCheckpoint;
+    }
+
+    /**
+     * Diff a chunk of rows, appending decrease events to {@code events}.
+     *
+     * @return the highest modification timestamp among {@code highest} and the rows
+     */
+    public LocalDateTime diff(List<StockSnapshotDTO> rows, List<StockChangeEventDTO> events, LocalDateTime highest) {
+        for (StockSnapshotDTO product : rows) {
+            checkProduct(product, events);
+            LocalDateTime updatedAt = product.getLastUpdate();
+            if (updatedAt != null && (highest == null || updatedAt.isAfter(highest))) {
+                highest = updatedAt;
+            }
+        }
+        return highest;
+    }
+
+    private void checkProduct(StockSnapshotDTO product, List<StockChangeEventDTO> events) {
+        int currentQuantity = product.getQuantity();
+        long productId = product.getId();
+        int lastQuantity = lastKnownQuantities.put(productId, currentQuantity);
+        if (snapshotCheckpoint != null && lastQuantity != currentQuantity) {
+            snapshotCheckpoint.record(productId, currentQuantity);
+        }
+        if (lastQuantity != StockSnapshotStore.MISSING && currentQuantity < lastQuantity) {
+            int quantityChanged = lastQuantity - currentQuantity;
+            BigDecimal saleTotal = product.getPrice() != null ? product.getPrice().multiply(BigDecimal.valueOf(quantityChanged)) : BigDecimal.ZERO;
+            StockChangeEventDTO event = StockChangeEventDTO.builder()
+                .productId(productId)
+                .productName(product.getName())
+                .productCategory(product.getCategory())
+                .quantityChanged(quantityChanged)
+                .newQuantity(currentQuantity)
+                .saleTotal(saleTotal)
+                .changeTimestamp(LocalDateTime.now())
+                .build();
+            events.add(event);
+            logger.debug("Stock decreased for product ID {}: -{} (new quantity: {})", productId, quantityChanged, currentQuantity);
+        }
+    }
+}
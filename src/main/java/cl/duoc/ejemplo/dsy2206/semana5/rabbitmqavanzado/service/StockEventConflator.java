@@ -0,0 +1,108 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Merges stock change events per product until the next {@link #flush}: quantities and sale
+ * totals are summed, name, category, new quantity and timestamp are taken from the latest event.
+ * <p>
+ * Each product has an accumulator holding an immutable state that writers replace by CAS, so
+ * adding never blocks. {@link #flush} seals every accumulator before reading it; a writer that
+ * finds its accumulator sealed removes it and retries on a fresh one, so every event lands in
+ * exactly one flushed result and totals are preserved.
+ */
+public class StockEventConflator {
+
+    private final Map<Long, AtomicReference<Accumulated>> accumulators = new ConcurrentHashMap<>();
+    private final LongAdder mergedEvents = new LongAdder();
+
+    public void add(List<StockChangeEventDTO> events) {
+        for (StockChangeEventDTO event : events) {
+            add(event);
+        }
+    }
+
+    public void add(StockChangeEventDTO event) {
+        Long productId = event.getProductId();
+        while (true) {
+            AtomicReference<Accumulated> accumulator = accumulators.get(productId);
+            if (accumulator == null) {
+                AtomicReference<Accumulated> created = new AtomicReference<>(Accumulated.of(event));
+                if (accumulators.putIfAbsent(productId, created) == null) {
+                    return;
+                }
+                continue;
+            }
+            Accumulated current = accumulator.get();
+            if (current.sealed()) {
+                // Being flushed: drop it from the map (if the flusher did not already) and start a new one
+                accumulators.remove(productId, accumulator);
+                continue;
+            }
+            if (accumulator.compareAndSet(current, current.merge(event))) {
+                mergedEvents.increment();
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return one event per product with events since the previous flush
+     */
+    public List<StockChangeEventDTO> flush() {
+        List<StockChangeEventDTO> flushed = new ArrayList<>(accumulators.size());
+        for (Map.Entry<Long, AtomicReference<Accumulated>> entry : accumulators.entrySet()) {
+            AtomicReference<Accumulated> accumulator = entry.getValue();
+            Accumulated sealed = accumulator.updateAndGet(Accumulated::seal);
+            accumulators.remove(entry.getKey(), accumulator);
+            flushed.add(sealed.toEvent());
+        }
+        return flushed;
+    }
+
+    public int pendingProducts() {
+        return accumulators.size();
+    }
+
+    /** Events folded into an earlier event of the same product, i.e. messages saved. */
+    public long getMergedEventCount() {
+        return mergedEvents.sum();
+    }
+
+    private record Accumulated(StockChangeEventDTO latest, int quantityChanged, BigDecimal saleTotal, boolean sealed) {
+
+        static Accumulated of(StockChangeEventDTO event) {
+            return new Accumulated(event, event.getQuantityChanged(), event.getSaleTotal(), false);
+        }
+
+        Accumulated merge(StockChangeEventDTO event) {
+            BigDecimal total = saleTotal == null ? event.getSaleTotal()
+                    : event.getSaleTotal() == null ? saleTotal : saleTotal.add(event.getSaleTotal());
+            return new Accumulated(event, quantityChanged + event.getQuantityChanged(), total, false);
+        }
+
+        Accumulated seal() {
+            return new Accumulated(latest, quantityChanged, saleTotal, true);
+        }
+
+        StockChangeEventDTO toEvent() {
+            return StockChangeEventDTO.builder()
+                    .productId(latest.getProductId())
+                    .productName(latest.getProductName())
+                    .productCategory(latest.getProductCategory())
+                    .quantityChanged(quantityChanged)
+                    .newQuantity(latest.getNewQuantity())
+                    .saleTotal(saleTotal)
+                    .changeTimestamp(latest.getChangeTimestamp())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import java.util.List;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+/**
+ * Sends stock change events to the broker. Called from the async publishing stage's thread;
+ * with async publishing off, from the poll thread, the partition diff workers or the
+ * conflation flusher; and from the outbox relay thread when the outbox is on.
+ * Implementations must therefore be thread-safe.
+ */
+public interface StockEventPublisher {
+
+    /**
+     * Publish a batch of events. Without publisher confirms a failed send throws;
+     * with confirms, unconfirmed events are retried or spilled by the publisher.
+     */
+    void publish(List<StockChangeEventDTO> events);
+
+    /**
+     * Publish a batch and return only once the broker has it (confirmed, when publisher
+     * confirms are on); throws otherwise. Nothing is retried or spilled, so the caller
+     * keeps ownership of the batch until this returns.
+     */
+    default void publishAndAwait(List<StockChangeEventDTO> events) {
+        publish(events);
+    }
+}
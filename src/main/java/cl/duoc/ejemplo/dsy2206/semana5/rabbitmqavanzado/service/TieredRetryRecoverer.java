@@ -0,0 +1,69 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageDeliveryMode;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.retry.MessageRecoverer;
+
+/**
+ * Delayed retry without holding a consumer: a failed message is republished to the retry
+ * queue of its next attempt, {@code <queue>.retry.<n>}, whose TTL dead-letters it back to
+ * the queue it was consumed from. The attempt travels in the {@value #ATTEMPT_HEADER}
+ * header; once every tier was used the message goes to the dead letter exchange instead.
+ * <p>
+ * The caller acks the original delivery after {@link #recover} returns, so the listener
+ * moves on to the next message at once and healthy traffic is not held up by retries.
+ */
+public class TieredRetryRecoverer implements MessageRecoverer {
+    private static final Logger logger = LoggerFactory.getLogger(TieredRetryRecoverer.class);
+
+    public static final String ATTEMPT_HEADER = "x-retry-attempt";
+
+    private final AmqpTemplate amqpTemplate;
+    private final int tiers;
+    private final String deadLetterExchange;
+    private final String deadLetterRoutingKey;
+
+    public TieredRetryRecoverer(AmqpTemplate amqpTemplate, int tiers, String deadLetterExchange, String deadLetterRoutingKey) {
+        this.amqpTemplate = amqpTemplate;
+        this.tiers = tiers;
+        this.deadLetterExchange = deadLetterExchange;
+        this.deadLetterRoutingKey = deadLetterRoutingKey;
+    }
+
+    public static String retryQueue(String queue, int attempt) {
+        return queue + ".retry." + attempt;
+    }
+
+    @Override
+    public void recover(Message message, Throwable cause) {
+        MessageProperties properties = message.getMessageProperties();
+        Integer header = properties.getHeader(ATTEMPT_HEADER);
+        int attempt = header != null ? header + 1 : 1;
+        if (properties.getDeliveryMode() == null) {
+            properties.setDeliveryMode(properties.getReceivedDeliveryMode() != null ? properties.getReceivedDeliveryMode()
+                    : MessageDeliveryMode.PERSISTENT);
+        }
+        String queue = properties.getConsumerQueue();
+        if (attempt <= tiers && queue != null) {
+            properties.setHeader(ATTEMPT_HEADER, attempt);
+            logger.warn("Message from {} failed ({}), retry {} of {} scheduled", queue, rootMessage(cause), attempt, tiers);
+            amqpTemplate.send("", retryQueue(queue, attempt), message);
+        } else {
+            properties.setHeader("x-exception-message", rootMessage(cause));
+            logger.error("Message from {} failed after {} retries ({}), dead-lettering it", queue, attempt - 1, rootMessage(cause));
+            amqpTemplate.send(deadLetterExchange, deadLetterRoutingKey, message);
+        }
+    }
+
+    private static String rootMessage(Throwable cause) {
+        Throwable root = cause;
+        while (root.getCause() != null) {
+            root = root.getCause();
+        }
+        return String.valueOf(root.getMessage());
+    }
+}
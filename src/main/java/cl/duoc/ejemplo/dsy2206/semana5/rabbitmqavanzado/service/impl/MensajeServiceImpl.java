@@ -1,24 +1,81 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
 
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.springframework.amqp.core.Message;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
 
 import com.rabbitmq.client.Channel;
 
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.BatchAcknowledger;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.MensajeService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.TieredRetryRecoverer;
 
 @Service
 public class MensajeServiceImpl implements MensajeService {
 
 	private final RabbitTemplate rabbitTemplate;
 
-	public MensajeServiceImpl(RabbitTemplate rabbitTemplate) {
+	// Simulated processing time per message, run on the worker pool instead of the listener thread
+	@Value("${mensaje.consumer.work-delay-ms:10000}")
+	private long workDelayMs;
+
+	private final ThreadPoolExecutor workerPool;
+	private final BatchAcknowledger acknowledger;
+	private final ScheduledExecutorService ackFlusher;
+	private final TieredRetryRecoverer retryRecoverer;
+
+	public MensajeServiceImpl(RabbitTemplate rabbitTemplate,
+			@Qualifier("myQueueRetryRecoverer") TieredRetryRecoverer retryRecoverer,
+			@Value("${mensaje.consumer.workers:32}") int workers,
+			@Value("${mensaje.consumer.worker-queue-capacity:4000}") int workerQueueCapacity,
+			@Value("${mensaje.consumer.ack-batch-size:50}") int ackBatchSize,
+			@Value("${mensaje.consumer.ack-interval-ms:200}") long ackIntervalMs,
+			@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
 		this.rabbitTemplate = rabbitTemplate;
+		this.retryRecoverer = retryRecoverer;
+		// With virtual threads the pool size still caps concurrent work, but a blocked worker costs no carrier
+		ThreadFactory workerFactory = virtualThreads ? Thread.ofVirtual().name("myqueue-worker-", 1).factory()
+				: Thread.ofPlatform().name("myqueue-worker-", 1).factory();
+		this.workerPool = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(workerQueueCapacity), workerFactory);
+		this.acknowledger = new BatchAcknowledger(ackBatchSize);
+		this.ackFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "myqueue-ack-flusher");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ackFlusher.scheduleWithFixedDelay(acknowledger::flush, ackIntervalMs, ackIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Finish the work already handed to the pool and ack it before the channels close.
+	 * Runs on context close, before the listener containers stop and close their channels;
+	 * deliveries arriving meanwhile are rejected by the pool and requeued unprocessed.
+	 * A consumer stopped when the container scales down closes its channel while its work
+	 * may still be running, so that work is redelivered: delivery is at least once.
+	 */
+	@EventListener(ContextClosedEvent.class)
+	public void drainWorkers() throws InterruptedException {
+
+		workerPool.shutdown();
+		workerPool.awaitTermination(workDelayMs + 5000, TimeUnit.MILLISECONDS);
+		ackFlusher.shutdown();
+		acknowledger.flush();
 	}
 
 	@Override
@@ -47,18 +104,49 @@ public class MensajeServiceImpl implements MensajeService {
 		System.out.println("Mensaje recibido en DLQ: " + objeto);
 	}
 
-	@RabbitListener(id = "listener-myQueue", queues = RabbitMQConfig.MAIN_QUEUE, ackMode = "MANUAL")
+	/**
+	 * Hands the message to the worker pool and returns at once, so the listener thread
+	 * keeps draining its prefetch window. Acks are sent in batches as work completes.
+	 */
+	@RabbitListener(id = "listener-myQueue", queues = RabbitMQConfig.MAIN_QUEUE, ackMode = "MANUAL",
+			containerFactory = "myQueueListenerContainerFactory")
 	@Override
 	public void recibirMensajeConAckManual(Message mensaje, Channel canal) throws IOException {
 
+		long deliveryTag = mensaje.getMessageProperties().getDeliveryTag();
+		acknowledger.received(canal, deliveryTag);
+		try {
+			workerPool.execute(() -> procesarMensaje(mensaje, canal, deliveryTag));
+		} catch (RejectedExecutionException e) {
+			// Pool saturated or shutting down: give the message back to the broker
+			acknowledger.nack(canal, deliveryTag, true);
+		}
+	}
+
+	private void procesarMensaje(Message mensaje, Channel canal, long deliveryTag) {
+
 		try {
 			System.out.println("Mensaje recibido: " + new String(mensaje.getBody()));
-			Thread.sleep(10000);
+			if (workDelayMs > 0) {
+				Thread.sleep(workDelayMs);
+			}
+			acknowledger.ack(canal, deliveryTag);
+		} catch (Exception e) {
+			retry(mensaje, canal, deliveryTag, e);
+		}
+	}
+
+	/**
+	 * Moves the message to its next retry tier and acks it; only if that publish fails is
+	 * the delivery nacked, which dead-letters it to dlx-queue.
+	 */
+	private void retry(Message mensaje, Channel canal, long deliveryTag, Exception cause) {
 
-			canal.basicAck(mensaje.getMessageProperties().getDeliveryTag(), false);
-			System.out.println("Acknowledge OK enviado");
+		try {
+			retryRecoverer.recover(mensaje, cause);
+			acknowledger.ack(canal, deliveryTag);
 		} catch (Exception e) {
-			canal.basicNack(mensaje.getMessageProperties().getDeliveryTag(), false, false);
+			acknowledger.nack(canal, deliveryTag, false);
 			System.out.println("Acknowledge NO OK enviado");
 		}
 	}
@@ -0,0 +1,102 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.CacheConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeObserver;
+
+/**
+ * Applies the quantities detected by the stock monitor to cached products, so the
+ * monitoring endpoints serve post-sale stock without going back to the database.
+ * Cached entities are never mutated; changed products are replaced by copies.
+ * Restocks produce no events and are picked up when the entry expires.
+ * <p>
+ * Parallel diff workers refresh the same cached lists concurrently, so every entry is
+ * replaced inside Caffeine's atomic {@code computeIfPresent}: two workers updating
+ * different products of one list both land instead of the later copy dropping the other.
+ */
+@Component
+public class ProductCacheRefresher implements StockChangeObserver {
+
+	private final Cache<Object, Object> products;
+	private final Cache<Object, Object> productsByCategory;
+	private final Cache<Object, Object> activeProducts;
+
+	public ProductCacheRefresher(CacheManager cacheManager) {
+
+		this.products = nativeCache(cacheManager, CacheConfig.PRODUCTS_CACHE);
+		this.productsByCategory = nativeCache(cacheManager, CacheConfig.PRODUCTS_BY_CATEGORY_CACHE);
+		this.activeProducts = nativeCache(cacheManager, CacheConfig.ACTIVE_PRODUCTS_CACHE);
+	}
+
+	@Override
+	public void onStockChanges(List<StockChangeEventDTO> stockChangeEvents) {
+
+		Map<Long, Integer> quantities = new HashMap<>();
+		Set<String> categories = new HashSet<>();
+		for (StockChangeEventDTO event : stockChangeEvents) {
+			quantities.put(event.getProductId(), event.getNewQuantity());
+			if (event.getProductCategory() != null) {
+				categories.add(event.getProductCategory());
+			}
+		}
+		quantities.forEach((productId, quantity) -> products.asMap().computeIfPresent(productId,
+				(key, cached) -> cached instanceof Product product && product.getQuantity() != quantity
+						? withQuantity(product, quantity) : cached));
+		for (String category : categories) {
+			refreshList(productsByCategory, category, quantities);
+		}
+		refreshList(activeProducts, CacheConfig.ACTIVE_PRODUCTS_KEY, quantities);
+	}
+
+	private static void refreshList(Cache<Object, Object> cache, Object key, Map<Long, Integer> quantities) {
+
+		cache.asMap().computeIfPresent(key, (ignored, cached) -> cached instanceof List<?> list ? refreshed(list, quantities) : cached);
+	}
+
+	/**
+	 * @return a copy of {@code cached} with the new quantities applied, or {@code cached} itself if none changed
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Product> refreshed(List<?> list, Map<Long, Integer> quantities) {
+
+		List<Product> cached = (List<Product>) list;
+		List<Product> refreshed = null;
+		for (int i = 0; i < cached.size(); i++) {
+			Product product = cached.get(i);
+			Integer quantity = quantities.get(product.getId());
+			if (quantity != null && quantity != product.getQuantity()) {
+				if (refreshed == null) {
+					refreshed = new ArrayList<>(cached);
+				}
+				refreshed.set(i, withQuantity(product, quantity));
+			}
+		}
+		return refreshed != null ? List.copyOf(refreshed) : cached;
+	}
+
+	private static Cache<Object, Object> nativeCache(CacheManager cacheManager, String name) {
+
+		return ((CaffeineCache) cacheManager.getCache(name)).getNativeCache();
+	}
+
+	private static Product withQuantity(Product product, int quantity) {
+
+		return new Product(product.getId(), product.getName(), product.getDescription(), quantity, product.getCategory(),
+				product.isActive(), product.getPrice(), product.getLastPriceUpdate(), product.getPreviousPrice(),
+				product.getVersion());
+	}
+}
@@ -0,0 +1,77 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.CacheConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductPageDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductSummaryDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ProductQueryService;
+
+/**
+ * Read-through access to products for the monitoring endpoints. Entries are kept fresh
+ * by {@link ProductCacheRefresher} as the stock monitor detects sales.
+ */
+@Service
+public class ProductQueryServiceImpl implements ProductQueryService {
+
+	private final ProductRepository productRepository;
+
+	@Value("${monitoring.api.stream-fetch-size:500}")
+	private int streamFetchSize;
+
+	public ProductQueryServiceImpl(ProductRepository productRepository) {
+
+		this.productRepository = productRepository;
+	}
+
+	@Cacheable(value = CacheConfig.PRODUCTS_CACHE, unless = "#result == null")
+	@Override
+	public Product findProduct(Long id) {
+
+		return productRepository.findById(id).orElse(null);
+	}
+
+	@Cacheable(value = CacheConfig.ACTIVE_PRODUCTS_CACHE, key = "'" + CacheConfig.ACTIVE_PRODUCTS_KEY + "'")
+	@Override
+	public List<Product> findActiveProducts() {
+
+		return List.copyOf(productRepository.findActiveProducts());
+	}
+
+	@Cacheable(CacheConfig.PRODUCTS_BY_CATEGORY_CACHE)
+	@Override
+	public List<Product> findActiveProductsByCategory(String category) {
+
+		return List.copyOf(productRepository.findActiveProductsByCategory(category));
+	}
+
+	@Override
+	public ProductPageDTO findActiveProductPage(String category, Long after, int limit) {
+
+		// One extra row tells whether another page follows without a COUNT query
+		List<ProductSummaryDTO> rows = productRepository.findActiveProductPage(category, after, limit + 1);
+		if (rows.size() <= limit) {
+			return new ProductPageDTO(rows, null);
+		}
+		List<ProductSummaryDTO> items = rows.subList(0, limit);
+		return new ProductPageDTO(List.copyOf(items), items.get(limit - 1).getId());
+	}
+
+	@Transactional(readOnly = true)
+	@Override
+	public void streamActiveProducts(String category, Consumer<ProductSummaryDTO> sink) {
+
+		try (Stream<ProductSummaryDTO> products = productRepository.streamActiveProductSummaries(category, streamFetchSize)) {
+			products.forEach(sink);
+		}
+	}
+}
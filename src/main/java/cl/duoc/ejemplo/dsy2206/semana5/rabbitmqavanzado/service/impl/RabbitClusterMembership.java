@@ -0,0 +1,106 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ClusterHeartbeatDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ClusterMembership;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ClusterView;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.ShardOwnership;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Membership over the broker: every instance broadcasts a heartbeat on a fanout
+ * exchange and listens on its own exclusive, auto-delete queue bound to it. A node
+ * that stops heartbeating drops out after the member timeout; a clean shutdown
+ * announces the leave so peers rebalance immediately.
+ * <p>
+ * Heartbeats have their own thread rather than the shared scheduler: a long stock or
+ * price scan must not delay them past the member timeout, or peers would take over this
+ * node's shards while it is still polling them.
+ */
+@Service
+@ConditionalOnProperty(value = "stock.monitoring.cluster.enabled", havingValue = "true")
+public class RabbitClusterMembership implements ClusterMembership {
+
+    private static final Logger logger = LoggerFactory.getLogger(RabbitClusterMembership.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final ClusterView clusterView;
+    private final ScheduledExecutorService heartbeatSender;
+
+    public RabbitClusterMembership(RabbitTemplate rabbitTemplate,
+            @Value("${stock.monitoring.cluster.node-id:}") String nodeId,
+            @Value("${stock.monitoring.cluster.shards:64}") int shardCount,
+            @Value("${stock.monitoring.cluster.member-timeout:15000}") long memberTimeoutMs,
+            @Value("${stock.monitoring.cluster.heartbeat-interval:5000}") long heartbeatIntervalMs) {
+        if (shardCount < 1 || shardCount > 1000) {
+            // The owned shards end up in an IN list, which Oracle caps at 1000 entries
+            throw new IllegalArgumentException("stock.monitoring.cluster.shards must be between 1 and 1000");
+        }
+        this.rabbitTemplate = rabbitTemplate;
+        this.clusterView = new ClusterView(nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId, shardCount,
+                memberTimeoutMs, System::currentTimeMillis);
+        logger.info("Stock monitor joining cluster as node {}", clusterView.getNodeId());
+        this.heartbeatSender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-cluster-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeatSender.scheduleAtFixedRate(this::sendHeartbeat, 0, heartbeatIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String getNodeId() {
+        return clusterView.getNodeId();
+    }
+
+    @Override
+    public ShardOwnership currentOwnership() {
+        return clusterView.currentOwnership();
+    }
+
+    private void sendHeartbeat() {
+        try {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.CLUSTER_EXCHANGE, "", new ClusterHeartbeatDTO(getNodeId(), false));
+        } catch (Exception e) {
+            logger.warn("Could not send cluster heartbeat: {}", e.getMessage());
+        }
+    }
+
+    @RabbitListener(id = "listener-cluster-heartbeat", bindings = @QueueBinding(value = @Queue,
+            exchange = @Exchange(name = RabbitMQConfig.CLUSTER_EXCHANGE, type = ExchangeTypes.FANOUT)))
+    public void onHeartbeat(ClusterHeartbeatDTO heartbeat) {
+        if (heartbeat.isLeaving()) {
+            logger.info("Stock monitor node {} left the cluster", heartbeat.getNodeId());
+            clusterView.onLeave(heartbeat.getNodeId());
+        } else {
+            clusterView.onHeartbeat(heartbeat.getNodeId());
+        }
+    }
+
+    @PreDestroy
+    public void leave() {
+        heartbeatSender.shutdownNow();
+        try {
+            rabbitTemplate.convertAndSend(RabbitMQConfig.CLUSTER_EXCHANGE, "", new ClusterHeartbeatDTO(getNodeId(), true));
+        } catch (Exception e) {
+            logger.warn("Could not announce cluster leave, peers will time this node out: {}", e.getMessage());
+        }
+    }
+}
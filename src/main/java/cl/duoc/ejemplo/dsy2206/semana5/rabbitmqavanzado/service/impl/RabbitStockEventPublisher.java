@@ -0,0 +1,278 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.converter.CompactBinaryMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockEventPublisher;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+@Service
+public class RabbitStockEventPublisher implements StockEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RabbitStockEventPublisher.class);
+
+    private final RabbitTemplate rabbitTemplate;
+    private final boolean confirmsEnabled;
+
+    @Value("${stock.monitoring.queue-name:stock-changes}")
+    private String stockChangeQueueName;
+
+    // json or binary; consumers decode either through the content-type delegating converter
+    @Value("${stock.monitoring.publish.wire-format:json}")
+    private String wireFormat;
+
+    @Value("${stock.monitoring.publish.confirms.max-retries:3}")
+    private int maxRetries;
+
+    @Value("${stock.monitoring.publish.confirms.spill-capacity:100000}")
+    private int spillCapacity;
+
+    @Value("${stock.monitoring.publish.confirms.timeout-ms:5000}")
+    private long confirmTimeoutMs;
+
+    @Value("${stock.monitoring.publish.confirms.retry-interval-ms:200}")
+    private long retryIntervalMs;
+
+    // Above zero, events go through the stock change exchange to the partition queue of their product
+    @Value("${stock.changes.partitions:0}")
+    private int partitions;
+
+    // Window of unconfirmed messages; the publisher thread blocks once it is full
+    private final Semaphore inFlight;
+    private final int maxInFlight;
+
+    private final Queue<PendingEvent> retryQueue = new ConcurrentLinkedQueue<>();
+    private final Queue<StockChangeEventDTO> spillBuffer = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger spillSize = new AtomicInteger();
+    private final Counter droppedCounter;
+    // Drains retryQueue whatever thread publishes: the publishing stage, the poll thread or the outbox relay
+    private ScheduledExecutorService retrier;
+
+    public RabbitStockEventPublisher(RabbitTemplate rabbitTemplate, CachingConnectionFactory connectionFactory,
+            MeterRegistry meterRegistry, @Value("${stock.monitoring.publish.confirms.max-in-flight:1000}") int maxInFlight) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.confirmsEnabled = connectionFactory.isPublisherConfirms();
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.droppedCounter = Counter.builder("stock.events.dropped")
+                .description("Unconfirmed stock change events dropped because the spill buffer was full").register(meterRegistry);
+        if (confirmsEnabled) {
+            Gauge.builder("stock.events.confirms.in-flight", this, RabbitStockEventPublisher::getInFlightCount)
+                    .description("Stock change events sent and not yet confirmed").register(meterRegistry);
+            Gauge.builder("stock.events.spilled", this, RabbitStockEventPublisher::getSpilledCount)
+                    .description("Unconfirmed stock change events held in the local spill buffer").register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void publish(List<StockChangeEventDTO> events) {
+        if (!confirmsEnabled) {
+            // invoke() pins one channel for the whole batch instead of checking one out per message
+            rabbitTemplate.invoke(operations -> {
+                for (StockChangeEventDTO event : events) {
+                    send(operations, event, null);
+                }
+                return null;
+            });
+            return;
+        }
+        List<PendingEvent> batch = new ArrayList<>(events.size());
+        for (StockChangeEventDTO event : events) {
+            batch.add(new PendingEvent(event, 0));
+        }
+        sendConfirmed(batch);
+    }
+
+    @Override
+    public void publishAndAwait(List<StockChangeEventDTO> events) {
+        rabbitTemplate.invoke(operations -> {
+            for (StockChangeEventDTO event : events) {
+                send(operations, event, null);
+            }
+            if (confirmsEnabled) {
+                // One wait for the whole batch; a nack or timeout throws and the caller re-sends it
+                operations.waitForConfirmsOrDie(confirmTimeoutMs);
+            }
+            return null;
+        });
+    }
+
+    @PostConstruct
+    public void startRetries() {
+        if (!confirmsEnabled) {
+            return;
+        }
+        retrier = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stock-confirm-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retrier.scheduleWithFixedDelay(() -> {
+            try {
+                retryPending();
+            } catch (Exception e) {
+                logger.error("Failed to re-send unconfirmed stock change events: {}", e.getMessage(), e);
+            }
+        }, retryIntervalMs, retryIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Re-send events whose earlier publish was not confirmed. Runs every retry-interval-ms
+     * on the publisher's own thread, so it does not depend on the publishing mode.
+     */
+    public void retryPending() {
+        if (!confirmsEnabled || retryQueue.isEmpty()) {
+            return;
+        }
+        List<PendingEvent> batch = new ArrayList<>();
+        PendingEvent pending;
+        while ((pending = retryQueue.poll()) != null) {
+            batch.add(pending);
+        }
+        sendConfirmed(batch);
+    }
+
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public int getSpilledCount() {
+        return spillSize.get();
+    }
+
+    /**
+     * Wait for outstanding confirms so they are not lost when the connection closes.
+     */
+    @PreDestroy
+    public void awaitConfirms() throws InterruptedException {
+        if (retrier != null) {
+            retrier.shutdown();
+            retrier.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        if (confirmsEnabled && inFlight.tryAcquire(maxInFlight, 10, TimeUnit.SECONDS)) {
+            inFlight.release(maxInFlight);
+        }
+        if (spillSize.get() > 0 || !retryQueue.isEmpty()) {
+            logger.warn("{} unconfirmed stock change events are still spilled and {} awaiting retry at shutdown",
+                    spillSize.get(), retryQueue.size());
+        }
+    }
+
+    private void sendConfirmed(List<PendingEvent> batch) {
+        int[] sent = { 0 };
+        try {
+            rabbitTemplate.invoke(operations -> {
+                for (PendingEvent pending : batch) {
+                    sendConfirmed(operations, pending);
+                    sent[0]++;
+                }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            // Events that never reached the channel go through the same retry/spill path as nacks
+            for (int i = sent[0]; i < batch.size(); i++) {
+                onNack(batch.get(i), e.getMessage());
+            }
+        }
+    }
+
+    private void sendConfirmed(RabbitOperations operations, PendingEvent pending) {
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            retryQueue.add(pending);
+            return;
+        }
+        CorrelationData correlation = new CorrelationData();
+        // Confirms arrive on the connection thread; nothing here waits per message
+        correlation.getFuture().whenComplete((confirm, error) -> {
+            inFlight.release();
+            if (error == null && confirm.isAck()) {
+                redriveSpilled();
+            } else {
+                onNack(pending, error != null ? error.getMessage() : confirm.getReason());
+            }
+        });
+        try {
+            send(operations, pending.event(), correlation);
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    private void send(RabbitOperations operations, StockChangeEventDTO event, CorrelationData correlation) {
+        if (partitions > 0) {
+            int partition = RabbitMQConfig.stockChangePartition(event.getProductId(), partitions);
+            operations.send(RabbitMQConfig.STOCK_CHANGE_EXCHANGE, RabbitMQConfig.stockChangePartitionRoutingKey(partition),
+                    toMessage(event), correlation);
+        } else {
+            operations.send("", stockChangeQueueName, toMessage(event), correlation);
+        }
+    }
+
+    private Message toMessage(StockChangeEventDTO event) {
+        MessageProperties properties = new MessageProperties();
+        properties.setContentType("binary".equals(wireFormat) ? CompactBinaryMessageConverter.CONTENT_TYPE : MessageProperties.CONTENT_TYPE_JSON);
+        return rabbitTemplate.getMessageConverter().toMessage(event, properties);
+    }
+
+    private void onNack(PendingEvent pending, String reason) {
+        if (pending.attempts() < maxRetries) {
+            logger.warn("Stock change event for product ID {} was not confirmed ({}), retrying", pending.event().getProductId(), reason);
+            retryQueue.add(new PendingEvent(pending.event(), pending.attempts() + 1));
+        } else if (spillSize.incrementAndGet() <= spillCapacity) {
+            logger.error("Stock change event for product ID {} was not confirmed after {} retries ({}), spilling to local buffer",
+                    pending.event().getProductId(), maxRetries, reason);
+            spillBuffer.add(pending.event());
+        } else {
+            spillSize.decrementAndGet();
+            droppedCounter.increment();
+            logger.error("Spill buffer full, dropping stock change event for product ID {}", pending.event().getProductId());
+        }
+    }
+
+    /**
+     * The broker is confirming again: move spilled events back into the retry queue.
+     */
+    private void redriveSpilled() {
+        if (spillSize.get() == 0) {
+            return;
+        }
+        StockChangeEventDTO event;
+        while ((event = spillBuffer.poll()) != null) {
+            spillSize.decrementAndGet();
+            retryQueue.add(new PendingEvent(event, 0));
+        }
+    }
+
+    private record PendingEvent(StockChangeEventDTO event, int attempts) {
+    }
+}
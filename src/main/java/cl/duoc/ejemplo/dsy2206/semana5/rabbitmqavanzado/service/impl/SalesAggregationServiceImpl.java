@@ -0,0 +1,50 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesAggregationService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator.Mode;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator.Span;
+
+@Service
+@ConditionalOnProperty(value = "stock.monitoring.sales-aggregation.enabled", havingValue = "true", matchIfMissing = true)
+public class SalesAggregationServiceImpl implements SalesAggregationService {
+
+	private final SalesWindowAggregator aggregator;
+
+	public SalesAggregationServiceImpl(@Value("${stock.monitoring.sales-aggregation.ranking-refresh-ms:1000}") long rankingRefreshMs) {
+
+		this.aggregator = new SalesWindowAggregator(System::currentTimeMillis, rankingRefreshMs);
+	}
+
+	@Override
+	public void onStockChanges(List<StockChangeEventDTO> stockChangeEvents) {
+
+		aggregator.record(stockChangeEvents);
+	}
+
+	@Override
+	public List<SalesTotalDTO> getTopProducts(Span span, Mode mode, int limit) {
+
+		return aggregator.topProducts(span, mode, limit);
+	}
+
+	@Override
+	public List<SalesTotalDTO> getCategoryTotals(Span span, Mode mode) {
+
+		return aggregator.categoryTotals(span, mode);
+	}
+
+	@Override
+	public SalesTotalDTO getCategoryTotal(Span span, Mode mode, String category) {
+
+		return aggregator.categoryTotal(span, mode, category);
+	}
+}
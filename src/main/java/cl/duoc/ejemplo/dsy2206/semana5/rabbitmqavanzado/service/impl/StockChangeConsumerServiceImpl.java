@@ -0,0 +1,142 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.RabbitMQConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeConsumerService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.TieredRetryRecoverer;
+
+/**
+ * Consumes stock-changes in batches and keeps running sales totals per product and
+ * per category. Each batch is folded into local totals first, so the shared counters
+ * are touched once per product and category per batch rather than once per event.
+ * Opt-in: enabling it makes this instance compete with downstream consumers of the queue.
+ */
+@Service
+@ConditionalOnProperty(value = "stock.consumer.enabled", havingValue = "true")
+public class StockChangeConsumerServiceImpl implements StockChangeConsumerService {
+
+	private static final Logger logger = LoggerFactory.getLogger(StockChangeConsumerServiceImpl.class);
+
+	private final Map<Long, Totals> productTotals = new ConcurrentHashMap<>();
+	private final Map<String, Totals> categoryTotals = new ConcurrentHashMap<>();
+	private final MessageConverter messageConverter;
+	private final TieredRetryRecoverer retryRecoverer;
+
+	public StockChangeConsumerServiceImpl(MessageConverter messageConverter,
+			@Qualifier("stockChangeRetryRecoverer") TieredRetryRecoverer retryRecoverer) {
+
+		this.messageConverter = messageConverter;
+		this.retryRecoverer = retryRecoverer;
+	}
+
+	/**
+	 * The container acks the whole batch once this returns. If folding the batch fails,
+	 * its messages are folded again one at a time and only those failing on their own go
+	 * through the retry tiers, and then to the stock-change DLQ; the healthy rest is
+	 * counted right away. A failed fold leaves the shared totals untouched, so nothing is
+	 * counted twice.
+	 */
+	@RabbitListener(id = "listener-stock-changes", queues = RabbitMQConfig.STOCK_CHANGE_QUEUE,
+			containerFactory = "stockChangeBatchContainerFactory")
+	@Override
+	public void recibirLoteCambiosStock(List<Message> mensajes) {
+
+		List<StockChangeEventDTO> eventos = new ArrayList<>(mensajes.size());
+		try {
+			for (Message mensaje : mensajes) {
+				eventos.add(convertir(mensaje));
+			}
+			recibirCambiosStock(eventos);
+		} catch (RuntimeException e) {
+			logger.warn("Stock change batch of {} messages failed ({}), folding them one by one", mensajes.size(), e.getMessage());
+			for (Message mensaje : mensajes) {
+				try {
+					recibirCambiosStock(List.of(convertir(mensaje)));
+				} catch (RuntimeException failure) {
+					retryRecoverer.recover(mensaje, failure);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void recibirCambiosStock(List<StockChangeEventDTO> eventos) {
+
+		Map<Long, long[]> byProduct = new HashMap<>();
+		Map<String, long[]> byCategory = new HashMap<>();
+		for (StockChangeEventDTO evento : eventos) {
+			long cents = SalesTotalDTO.toCents(evento.getSaleTotal());
+			fold(byProduct.computeIfAbsent(evento.getProductId(), id -> new long[2]), evento.getQuantityChanged(), cents);
+			if (evento.getProductCategory() != null) {
+				fold(byCategory.computeIfAbsent(evento.getProductCategory(), category -> new long[2]), evento.getQuantityChanged(), cents);
+			}
+		}
+		byProduct.forEach((productId, sums) -> productTotals.computeIfAbsent(productId, id -> new Totals()).add(sums));
+		byCategory.forEach((category, sums) -> categoryTotals.computeIfAbsent(category, key -> new Totals()).add(sums));
+		logger.debug("Folded {} stock change events into {} products and {} categories", eventos.size(), byProduct.size(),
+				byCategory.size());
+	}
+
+	@Override
+	public List<SalesTotalDTO> getProductTotals() {
+
+		List<SalesTotalDTO> totals = new ArrayList<>(productTotals.size());
+		productTotals.forEach((productId, sums) -> totals.add(sums.toDTO(String.valueOf(productId))));
+		return totals;
+	}
+
+	@Override
+	public List<SalesTotalDTO> getCategoryTotals() {
+
+		List<SalesTotalDTO> totals = new ArrayList<>(categoryTotals.size());
+		categoryTotals.forEach((category, sums) -> totals.add(sums.toDTO(category)));
+		return totals;
+	}
+
+	private StockChangeEventDTO convertir(Message mensaje) {
+
+		// The hint the listener adapter would set, so JSON binds to the DTO whatever its type headers say
+		mensaje.getMessageProperties().setInferredArgumentType(StockChangeEventDTO.class);
+		return (StockChangeEventDTO) messageConverter.fromMessage(mensaje);
+	}
+
+	private static void fold(long[] sums, long units, long cents) {
+
+		sums[0] += units;
+		sums[1] += cents;
+	}
+
+	private static final class Totals {
+
+		private final LongAdder units = new LongAdder();
+		private final LongAdder revenueCents = new LongAdder();
+
+		void add(long[] sums) {
+
+			units.add(sums[0]);
+			revenueCents.add(sums[1]);
+		}
+
+		SalesTotalDTO toDTO(String key) {
+
+			return SalesTotalDTO.fromCents(key, units.sum(), revenueCents.sum());
+		}
+	}
+}
@@ -1,41 +1,293 @@
 package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
 
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.OutboxRelay;
 import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeNotificationService;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeObserver;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockEventConflator;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockEventPublisher;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.OutboxJournal;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 @Service
 public class StockChangeNotificationServiceImpl implements StockChangeNotificationService {
     private static final Logger logger = LoggerFactory.getLogger(StockChangeNotificationServiceImpl.class);
 
-    private final RabbitTemplate rabbitTemplate;
-
-    @Value("${stock.monitoring.queue-name:stock-changes}")
-    private String stockChangeQueueName;
+    private final StockEventPublisher stockEventPublisher;
+    private final List<StockChangeObserver> stockChangeObservers;
+    private final Timer publishTimer;
+    private final Counter publishedCounter;
+    private final Counter failedCounter;
 
     @Value("${stock.monitoring.enabled:true}")
     private boolean notificationsEnabled;
 
-    public StockChangeNotificationServiceImpl(RabbitTemplate rabbitTemplate) {
-        this.rabbitTemplate = rabbitTemplate;
+    @Value("${stock.monitoring.publish.async:true}")
+    private boolean asyncPublishing;
+
+    @Value("${stock.monitoring.publish.batch-size:200}")
+    private int batchSize;
+
+    @Value("${stock.monitoring.publish.linger-ms:20}")
+    private long lingerMs;
+
+    @Value("${stock.monitoring.publish.queue-capacity:50000}")
+    private int queueCapacity;
+
+    @Value("${stock.monitoring.publish.conflation.enabled:false}")
+    private boolean conflationEnabled;
+
+    @Value("${stock.monitoring.publish.conflation.window-ms:1000}")
+    private long conflationWindowMs;
+
+    @Value("${stock.monitoring.publish.outbox.enabled:false}")
+    private boolean outboxEnabled;
+
+    @Value("${stock.monitoring.publish.outbox.dir:./data/outbox}")
+    private String outboxDirectory;
+
+    @Value("${stock.monitoring.publish.outbox.segment-bytes:67108864}")
+    private int outboxSegmentBytes;
+
+    @Value("${stock.monitoring.publish.outbox.flush-interval-ms:50}")
+    private long outboxFlushIntervalMs;
+
+    @Value("${stock.monitoring.publish.outbox.max-bytes:1073741824}")
+    private long outboxMaxBytes;
+
+    private BlockingQueue<StockChangeEventDTO> pendingEvents;
+    private Thread publisherThread;
+    private volatile boolean running;
+    // Non-null when conflation is on: events wait here for up to one window, merged per product
+    private StockEventConflator conflator;
+    private ScheduledExecutorService conflationFlusher;
+    // Non-null when the outbox is on: events are journaled to disk and relayed to the broker from there
+    private OutboxJournal outboxJournal;
+    private OutboxRelay outboxRelay;
+    private ScheduledExecutorService outboxFlusher;
+    private final MeterRegistry meterRegistry;
+
+    public StockChangeNotificationServiceImpl(StockEventPublisher stockEventPublisher,
+            ObjectProvider<StockChangeObserver> stockChangeObservers, MeterRegistry meterRegistry) {
+        this.stockEventPublisher = stockEventPublisher;
+        this.stockChangeObservers = stockChangeObservers.orderedStream().toList();
+        this.meterRegistry = meterRegistry;
+        this.publishTimer = Timer.builder("stock.events.publish")
+                .description("Time the publishing stage blocks sending one batch to the broker").register(meterRegistry);
+        this.publishedCounter = Counter.builder("stock.events.published")
+                .description("Stock change events handed to the broker").register(meterRegistry);
+        this.failedCounter = Counter.builder("stock.events.failed")
+                .description("Stock change events whose send threw").register(meterRegistry);
+        Gauge.builder("stock.events.backlog", this, StockChangeNotificationServiceImpl::getPendingEventCount)
+                .description("Stock change events queued for the publishing stage").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void startPublisher() throws IOException {
+        if (outboxEnabled) {
+            outboxJournal = new OutboxJournal(Path.of(outboxDirectory), outboxSegmentBytes, outboxMaxBytes);
+            outboxRelay = new OutboxRelay(outboxJournal, stockEventPublisher, batchSize);
+            outboxRelay.start();
+            // Group commit: journaled events reach the disk once per flush interval, not once per event
+            outboxFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stock-outbox-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            outboxFlusher.scheduleWithFixedDelay(outboxJournal::flush, outboxFlushIntervalMs, outboxFlushIntervalMs, TimeUnit.MILLISECONDS);
+            Gauge.builder("stock.events.outbox.pending", outboxJournal, OutboxJournal::pendingRecords)
+                    .description("Journaled stock change events not yet confirmed by the broker").register(meterRegistry);
+        }
+        if (conflationEnabled) {
+            conflator = new StockEventConflator();
+            conflationFlusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "stock-event-conflator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            conflationFlusher.scheduleWithFixedDelay(this::flushConflated, conflationWindowMs, conflationWindowMs, TimeUnit.MILLISECONDS);
+            FunctionCounter.builder("stock.events.conflated", conflator, StockEventConflator::getMergedEventCount)
+                    .description("Stock change events merged into an earlier event of the same product").register(meterRegistry);
+        }
+        if (!asyncPublishing || outboxJournal != null) {
+            return;
+        }
+        pendingEvents = new LinkedBlockingQueue<>(queueCapacity);
+        running = true;
+        publisherThread = new Thread(this::publishLoop, "stock-event-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+    }
+
+    /**
+     * Let the publisher thread drain what is still queued. This bean is destroyed
+     * before the RabbitTemplate it depends on, so the connection is still open here.
+     */
+    @PreDestroy
+    public void stopPublisher() throws InterruptedException {
+        if (conflationFlusher != null) {
+            conflationFlusher.shutdown();
+            conflationFlusher.awaitTermination(10, TimeUnit.SECONDS);
+            // Whatever is still accumulated goes out with the final drain
+            flushConflated();
+        }
+        if (outboxRelay != null) {
+            outboxRelay.stop(TimeUnit.SECONDS.toMillis(10));
+            outboxFlusher.shutdown();
+            outboxJournal.close();
+            if (outboxJournal.pendingRecords() > 0) {
+                logger.info("{} stock change events stay in the outbox for the next start", outboxJournal.pendingRecords());
+            }
+        }
+        if (publisherThread == null) {
+            return;
+        }
+        running = false;
+        publisherThread.join(TimeUnit.SECONDS.toMillis(10));
+        if (!pendingEvents.isEmpty()) {
+            logger.warn("{} stock change events were still pending at shutdown", pendingEvents.size());
+        }
     }
 
     @Override
     public void notifyStockChange(StockChangeEventDTO stockChangeEvent) {
+        notifyStockChanges(List.of(stockChangeEvent));
+    }
+
+    @Override
+    public void notifyStockChanges(List<StockChangeEventDTO> stockChangeEvents) {
+        if (stockChangeEvents.isEmpty()) {
+            return;
+        }
+        for (StockChangeObserver observer : stockChangeObservers) {
+            try {
+                observer.onStockChanges(stockChangeEvents);
+            } catch (Exception e) {
+                logger.error("Stock change observer {} failed: {}", observer.getClass().getSimpleName(), e.getMessage(), e);
+            }
+        }
         if (!notificationsEnabled) {
-            logger.debug("Stock change notifications are disabled. Skipping notification for product ID: {}", stockChangeEvent.getProductId());
+            logger.debug("Stock change notifications are disabled. Skipping {} notifications", stockChangeEvents.size());
+            return;
+        }
+        if (conflator != null) {
+            conflator.add(stockChangeEvents);
+            return;
+        }
+        dispatch(stockChangeEvents);
+    }
+
+    private void flushConflated() {
+        try {
+            List<StockChangeEventDTO> merged = conflator.flush();
+            if (!merged.isEmpty()) {
+                dispatch(merged);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to flush conflated stock change events: {}", e.getMessage(), e);
+        }
+    }
+
+    private void dispatch(List<StockChangeEventDTO> stockChangeEvents) {
+        if (outboxRelay != null) {
+            int rejected = outboxRelay.append(stockChangeEvents);
+            if (rejected > 0) {
+                failedCounter.increment(rejected);
+                logger.error("Stock event outbox is full ({} pending), dropped {} stock change events",
+                        outboxJournal.pendingRecords(), rejected);
+            }
+            return;
+        }
+        if (!asyncPublishing) {
+            for (int from = 0; from < stockChangeEvents.size(); from += batchSize) {
+                publishBatch(stockChangeEvents.subList(from, Math.min(from + batchSize, stockChangeEvents.size())));
+            }
             return;
         }
         try {
-            logger.info("Sending stock change notification for product ID: {} - {} quantity changed {} new quantity {} sale total {}", stockChangeEvent.getProductId(), stockChangeEvent.getProductName(), stockChangeEvent.getQuantityChanged(), stockChangeEvent.getNewQuantity(), stockChangeEvent.getSaleTotal());
-            rabbitTemplate.convertAndSend(stockChangeQueueName, stockChangeEvent);
-            logger.info("Stock change notification sent successfully for product ID: {}", stockChangeEvent.getProductId());
+            for (StockChangeEventDTO event : stockChangeEvents) {
+                // Blocks the caller only when the publisher has fallen queue-capacity events behind
+                pendingEvents.put(event);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while queueing stock change notifications", e);
+        }
+    }
+
+    @Override
+    public int getPendingEventCount() {
+        return (pendingEvents != null ? pendingEvents.size() : 0) + (conflator != null ? conflator.pendingProducts() : 0)
+                + (outboxJournal != null ? (int) outboxJournal.pendingRecords() : 0);
+    }
+
+    private void publishLoop() {
+        List<StockChangeEventDTO> batch = new ArrayList<>(batchSize);
+        while (running || !pendingEvents.isEmpty()) {
+            try {
+                StockChangeEventDTO first = pendingEvents.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+                while (batch.size() < batchSize) {
+                    if (pendingEvents.drainTo(batch, batchSize - batch.size()) > 0) {
+                        continue;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    StockChangeEventDTO next = remaining > 0 && running ? pendingEvents.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                publishBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void publishBatch(List<StockChangeEventDTO> batch) {
+        long start = System.nanoTime();
+        try {
+            stockEventPublisher.publish(batch);
+            publishTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            publishedCounter.increment(batch.size());
+            logger.info("Sent {} stock change notifications", batch.size());
+            if (logger.isDebugEnabled()) {
+                for (StockChangeEventDTO event : batch) {
+                    logger.debug("Stock change notification for product ID: {} - {} quantity changed {} new quantity {} sale total {}", event.getProductId(), event.getProductName(), event.getQuantityChanged(), event.getNewQuantity(), event.getSaleTotal());
+                }
+            }
         } catch (Exception e) {
-            logger.error("Failed to send stock change notification for product ID: {}. Error: {}", stockChangeEvent.getProductId(), e.getMessage(), e);
+            failedCounter.increment(batch.size());
+            logger.error("Failed to send {} stock change notifications (first product ID: {}). Error: {}", batch.size(), batch.get(0).getProductId(), e.getMessage(), e);
         }
     }
 
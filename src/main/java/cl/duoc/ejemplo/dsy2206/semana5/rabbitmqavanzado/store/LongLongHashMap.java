@@ -0,0 +1,139 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Primitive long to long map with linear probing, laid out like
+ * {@link OpenAddressingSnapshotStore}: 16 bytes per slot and no boxing on lookups.
+ * Key 0 is kept outside the table because it marks empty slots. Not thread-safe.
+ */
+public class LongLongHashMap {
+
+    public static final long MISSING = Long.MIN_VALUE;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    private boolean hasZeroKey;
+    private long zeroValue;
+
+    public LongLongHashMap(int expectedSize) {
+        allocate(OpenAddressingSnapshotStore.tableSizeFor(expectedSize));
+    }
+
+    /**
+     * @return the value, or {@link #MISSING}
+     */
+    public long get(long key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : MISSING;
+        }
+        int index = SnapshotHashing.slot(key, mask);
+        while (true) {
+            long current = keys[index];
+            if (current == key) {
+                return values[index];
+            }
+            if (current == 0) {
+                return MISSING;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * @return the previous value, or {@link #MISSING}
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            long previous = hasZeroKey ? zeroValue : MISSING;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int index = SnapshotHashing.slot(key, mask);
+        while (true) {
+            long current = keys[index];
+            if (current == key) {
+                long previous = values[index];
+                values[index] = value;
+                return previous;
+            }
+            if (current == 0) {
+                keys[index] = key;
+                values[index] = value;
+                if (++size > resizeThreshold) {
+                    rehash(keys.length << 1);
+                }
+                return MISSING;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /**
+     * Drop every entry whose key does not match {@code keep}, keeping the table size.
+     */
+    public void retainKeys(LongPredicate keep) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(oldKeys.length);
+        hasZeroKey = hasZeroKey && keep.test(0);
+        size = hasZeroKey ? 1 : 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0 && keep.test(key)) {
+                int index = SnapshotHashing.slot(key, mask);
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+                size++;
+            }
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int index = SnapshotHashing.slot(key, mask);
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+}
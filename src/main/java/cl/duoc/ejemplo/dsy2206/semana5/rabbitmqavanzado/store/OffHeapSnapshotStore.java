@@ -0,0 +1,180 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Open-addressing store kept outside the Java heap, either in a direct buffer
+ * or in a memory-mapped file under {@code mappedDirectory}. Each slot is a
+ * 12-byte (key, quantity) pair, so a large catalog adds no GC pressure and,
+ * when mapped, can be paged out by the OS.
+ */
+public class OffHeapSnapshotStore implements StockSnapshotStore {
+
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final int SLOT_BYTES = Long.BYTES + Integer.BYTES;
+
+    private final Path mappedDirectory;
+    private Path mappedFile;
+
+    private ByteBuffer table;
+    private int capacity;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public OffHeapSnapshotStore(int expectedSize, Path mappedDirectory) {
+        this.mappedDirectory = mappedDirectory;
+        allocate(OpenAddressingSnapshotStore.tableSizeFor(expectedSize));
+    }
+
+    @Override
+    public int get(long productId) {
+        if (productId == 0) {
+            return hasZeroKey ? zeroValue : MISSING;
+        }
+        int index = SnapshotHashing.slot(productId, mask);
+        while (true) {
+            int offset = index * SLOT_BYTES;
+            long key = table.getLong(offset);
+            if (key == productId) {
+                return table.getInt(offset + Long.BYTES);
+            }
+            if (key == 0) {
+                return MISSING;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    @Override
+    public int put(long productId, int quantity) {
+        if (productId == 0) {
+            int previous = hasZeroKey ? zeroValue : MISSING;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = quantity;
+            return previous;
+        }
+        int index = SnapshotHashing.slot(productId, mask);
+        while (true) {
+            int offset = index * SLOT_BYTES;
+            long key = table.getLong(offset);
+            if (key == productId) {
+                int previous = table.getInt(offset + Long.BYTES);
+                table.putInt(offset + Long.BYTES, quantity);
+                return previous;
+            }
+            if (key == 0) {
+                table.putLong(offset, productId);
+                table.putInt(offset + Long.BYTES, quantity);
+                if (++size > resizeThreshold) {
+                    rehash(capacity << 1);
+                }
+                return MISSING;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < capacity; i++) {
+            table.putLong(i * SLOT_BYTES, 0L);
+        }
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0L, zeroValue);
+        }
+        for (int i = 0; i < capacity; i++) {
+            int offset = i * SLOT_BYTES;
+            long key = table.getLong(offset);
+            if (key != 0) {
+                consumer.accept(key, table.getInt(offset + Long.BYTES));
+            }
+        }
+    }
+
+    @Override
+    public long memoryFootprintBytes() {
+        return (long) capacity * SLOT_BYTES;
+    }
+
+    private void rehash(int newCapacity) {
+        ByteBuffer oldTable = table;
+        int oldCapacity = capacity;
+        Path oldFile = mappedFile;
+        allocate(newCapacity);
+        for (int i = 0; i < oldCapacity; i++) {
+            int oldOffset = i * SLOT_BYTES;
+            long key = oldTable.getLong(oldOffset);
+            if (key != 0) {
+                int index = SnapshotHashing.slot(key, mask);
+                while (table.getLong(index * SLOT_BYTES) != 0) {
+                    index = (index + 1) & mask;
+                }
+                table.putLong(index * SLOT_BYTES, key);
+                table.putInt(index * SLOT_BYTES + Long.BYTES, oldTable.getInt(oldOffset + Long.BYTES));
+            }
+        }
+        if (oldFile != null) {
+            try {
+                Files.deleteIfExists(oldFile);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not delete old snapshot mapping " + oldFile, e);
+            }
+        }
+    }
+
+    private void allocate(int newCapacity) {
+        if ((long) newCapacity * SLOT_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Off-heap snapshot cannot grow to " + newCapacity + " slots");
+        }
+        int bytes = newCapacity * SLOT_BYTES;
+        if (mappedDirectory == null) {
+            table = ByteBuffer.allocateDirect(bytes);
+        } else {
+            table = map(bytes, newCapacity);
+        }
+        table.order(ByteOrder.nativeOrder());
+        capacity = newCapacity;
+        mask = newCapacity - 1;
+        resizeThreshold = (int) (newCapacity * LOAD_FACTOR);
+    }
+
+    private ByteBuffer map(int bytes, int newCapacity) {
+        try {
+            Files.createDirectories(mappedDirectory);
+            mappedFile = mappedDirectory.resolve("stock-snapshot-" + newCapacity + ".map");
+            Files.deleteIfExists(mappedFile);
+            try (FileChannel channel = FileChannel.open(mappedFile, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                // A fresh sparse file reads back as zeros, which is the empty-slot marker
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map snapshot file in " + mappedDirectory, e);
+        }
+    }
+}
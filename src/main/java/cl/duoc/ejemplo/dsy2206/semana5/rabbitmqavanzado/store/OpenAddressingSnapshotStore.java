@@ -0,0 +1,134 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import java.util.Arrays;
+
+/**
+ * Heap store backed by parallel long/int arrays with linear probing.
+ * Costs 12 bytes per slot instead of the ~80 bytes of a boxed
+ * ConcurrentHashMap entry. Key 0 is kept outside the table because it
+ * marks empty slots.
+ */
+public class OpenAddressingSnapshotStore implements StockSnapshotStore {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+
+    private boolean hasZeroKey;
+    private int zeroValue;
+
+    public OpenAddressingSnapshotStore(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    @Override
+    public int get(long productId) {
+        if (productId == 0) {
+            return hasZeroKey ? zeroValue : MISSING;
+        }
+        int index = SnapshotHashing.slot(productId, mask);
+        while (true) {
+            long key = keys[index];
+            if (key == productId) {
+                return values[index];
+            }
+            if (key == 0) {
+                return MISSING;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    @Override
+    public int put(long productId, int quantity) {
+        if (productId == 0) {
+            int previous = hasZeroKey ? zeroValue : MISSING;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = quantity;
+            return previous;
+        }
+        int index = SnapshotHashing.slot(productId, mask);
+        while (true) {
+            long key = keys[index];
+            if (key == productId) {
+                int previous = values[index];
+                values[index] = quantity;
+                return previous;
+            }
+            if (key == 0) {
+                keys[index] = productId;
+                values[index] = quantity;
+                if (++size > resizeThreshold) {
+                    rehash(keys.length << 1);
+                }
+                return MISSING;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0L, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    @Override
+    public long memoryFootprintBytes() {
+        return (long) keys.length * Long.BYTES + (long) values.length * Integer.BYTES;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int index = SnapshotHashing.slot(key, mask);
+                while (keys[index] != 0) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.ceil(Math.max(expectedSize, 16) / LOAD_FACTOR);
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+}
@@ -0,0 +1,293 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of opaque records in memory-mapped segment files, read back by a
+ * single consumer that commits the offset it has processed.
+ * <p>
+ * Offsets are byte addresses: segment {@code outbox-<base>.seg} covers [base, base + size).
+ * A record is a length, a CRC32C and the payload; a length of -1 (or less than a header
+ * left) moves on to the next segment. Appending is a copy into the mapping, so it costs
+ * no system call; {@link #flush} forces the segments written since the previous flush
+ * and the committed offset to disk, so durability is paid once per flush interval
+ * (group commit) rather than per record. Segments wholly before the committed offset are
+ * deleted. The segments on disk are capped at {@code maxBytes}: once a new segment would
+ * exceed it, {@link #append} rejects records until the consumer commits past the oldest
+ * one. Recovery resumes at the committed offset, stops at the first torn record and
+ * zeroes the rest of that segment.
+ * <p>
+ * {@link #append} may be called from any thread; {@link #read} and {@link #commit} from one
+ * consumer thread. The reader never reads past the published write offset. Rolling and
+ * retiring segments both happen under the journal lock.
+ */
+public class OutboxJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboxJournal.class);
+
+    private static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_PREFIX = "outbox-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final long maxBytes;
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final MappedByteBuffer offsetFile;
+    private final List<Segment> unflushed = new ArrayList<>();
+    private final AtomicLong pendingRecords = new AtomicLong();
+    private final CRC32C appendCrc = new CRC32C();
+
+    private Segment active;
+    private volatile long writeOffset;
+    private volatile long committedOffset;
+
+    public OutboxJournal(Path directory, int segmentBytes, long maxBytes) throws IOException {
+        if (segmentBytes < 1024) {
+            throw new IllegalArgumentException("Outbox segments must be at least 1 KiB, got " + segmentBytes);
+        }
+        if (maxBytes < 2L * segmentBytes) {
+            throw new IllegalArgumentException("Outbox must hold at least two segments of " + segmentBytes + " bytes, got " + maxBytes);
+        }
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxBytes = maxBytes;
+        this.offsetFile = map(directory.resolve("outbox.offset"), Long.BYTES);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(OutboxJournal::isSegment).toList()) {
+                String name = file.getFileName().toString();
+                long base = Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(base, new Segment(base, map(file, (int) Files.size(file))));
+            }
+        }
+        recover(offsetFile.getLong(0));
+    }
+
+    /**
+     * Append one record.
+     *
+     * @return the offset just past the record, or -1 if the journal is full or its next
+     *         segment could not be created; the record is then not journaled
+     */
+    public synchronized long append(byte[] payload) {
+        int needed = RECORD_HEADER_BYTES + payload.length;
+        if (payload.length == 0 || needed > segmentBytes) {
+            throw new IllegalArgumentException("Outbox records must be 1 to " + (segmentBytes - RECORD_HEADER_BYTES)
+                    + " bytes, got " + payload.length);
+        }
+        int position = (int) (writeOffset - active.base());
+        if (position + needed > active.size()) {
+            long end = active.base() + active.size();
+            if (end + segmentBytes - segments.firstKey() > maxBytes) {
+                return -1;
+            }
+            Segment next;
+            try {
+                next = createSegment(end);
+            } catch (IOException e) {
+                logger.warn("Could not create outbox segment {}: {}", end, e.getMessage());
+                return -1;
+            }
+            if (active.size() - position >= RECORD_HEADER_BYTES) {
+                active.buffer().putInt(position, END_OF_SEGMENT);
+            }
+            unflushed.add(active);
+            active = next;
+            position = 0;
+        }
+        appendCrc.reset();
+        appendCrc.update(payload);
+        MappedByteBuffer buffer = active.buffer();
+        buffer.put(position + RECORD_HEADER_BYTES, payload);
+        buffer.putInt(position + Integer.BYTES, (int) appendCrc.getValue());
+        buffer.putInt(position, payload.length);
+        pendingRecords.incrementAndGet();
+        // Publishes the record to the reader
+        writeOffset = active.base() + position + needed;
+        return writeOffset;
+    }
+
+    /**
+     * Read up to {@code maxRecords} records starting at {@code offset}.
+     */
+    public Batch read(long offset, int maxRecords) {
+        List<byte[]> payloads = new ArrayList<>();
+        long limit = writeOffset;
+        while (payloads.size() < maxRecords && offset < limit) {
+            Segment segment = segments.floorEntry(offset).getValue();
+            int position = (int) (offset - segment.base());
+            int length = segment.size() - position < RECORD_HEADER_BYTES ? END_OF_SEGMENT : segment.buffer().getInt(position);
+            if (length == END_OF_SEGMENT) {
+                offset = segment.base() + segment.size();
+                continue;
+            }
+            byte[] payload = new byte[length];
+            segment.buffer().get(position + RECORD_HEADER_BYTES, payload);
+            payloads.add(payload);
+            offset += RECORD_HEADER_BYTES + length;
+        }
+        return new Batch(payloads, offset);
+    }
+
+    /**
+     * Everything before {@code offset} has been delivered. Made durable by the next {@link #flush}.
+     *
+     * @param records number of records between the previous committed offset and {@code offset}
+     */
+    public void commit(long offset, int records) {
+        committedOffset = offset;
+        offsetFile.putLong(0, offset);
+        pendingRecords.addAndGet(-records);
+        List<Long> delivered = new ArrayList<>();
+        synchronized (this) {
+            Map.Entry<Long, Segment> first;
+            while ((first = segments.firstEntry()) != null && first.getValue() != active
+                    && first.getKey() + first.getValue().size() <= offset) {
+                segments.remove(first.getKey());
+                unflushed.remove(first.getValue());
+                delivered.add(first.getKey());
+            }
+        }
+        for (long base : delivered) {
+            try {
+                Files.deleteIfExists(segmentFile(base));
+            } catch (IOException e) {
+                logger.warn("Could not delete delivered outbox segment {}: {}", base, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Force appended records and the committed offset to disk.
+     */
+    public void flush() {
+        List<Segment> written;
+        synchronized (this) {
+            written = new ArrayList<>(unflushed);
+            unflushed.clear();
+            written.add(active);
+        }
+        for (Segment segment : written) {
+            segment.buffer().force();
+        }
+        offsetFile.force();
+    }
+
+    public long committedOffset() {
+        return committedOffset;
+    }
+
+    public long pendingRecords() {
+        return pendingRecords.get();
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    private void recover(long committed) throws IOException {
+        while (!segments.isEmpty() && segments.firstKey() + segments.firstEntry().getValue().size() <= committed) {
+            Files.deleteIfExists(segmentFile(segments.pollFirstEntry().getKey()));
+        }
+        if (segments.isEmpty()) {
+            active = createSegment(committed);
+            committedOffset = writeOffset = committed;
+            return;
+        }
+        long offset = Math.max(committed, segments.firstKey());
+        committedOffset = offset;
+        CRC32C crc = new CRC32C();
+        long records = 0;
+        while (true) {
+            Segment segment = segments.floorEntry(offset).getValue();
+            int position = (int) (offset - segment.base());
+            int length = segment.size() - position < RECORD_HEADER_BYTES ? END_OF_SEGMENT : segment.buffer().getInt(position);
+            Segment next = segments.get(segment.base() + segment.size());
+            if (length == END_OF_SEGMENT && next != null) {
+                offset = next.base();
+                continue;
+            }
+            if (length > 0 && position + RECORD_HEADER_BYTES + length <= segment.size()) {
+                byte[] payload = new byte[length];
+                segment.buffer().get(position + RECORD_HEADER_BYTES, payload);
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() == segment.buffer().getInt(position + Integer.BYTES)) {
+                    offset += RECORD_HEADER_BYTES + length;
+                    records++;
+                    continue;
+                }
+            }
+            // End of the journal: no more records, or a torn one that never made it to disk
+            if (length != 0 && length != END_OF_SEGMENT) {
+                logger.warn("Discarding torn outbox record at offset {}", offset);
+                for (int i = position; i < segment.size(); i++) {
+                    segment.buffer().put(i, (byte) 0);
+                }
+            }
+            if (length == END_OF_SEGMENT) {
+                // Rolled but the next segment was never created
+                active = createSegment(segment.base() + segment.size());
+                offset = active.base();
+            } else {
+                active = segment;
+            }
+            break;
+        }
+        writeOffset = offset;
+        pendingRecords.set(records);
+        logger.info("Recovered stock event outbox: {} undelivered records from offset {}", records, committedOffset);
+    }
+
+    private Segment createSegment(long base) throws IOException {
+        Segment segment = new Segment(base, map(segmentFile(base), segmentBytes));
+        segments.put(base, segment);
+        return segment;
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(SEGMENT_PREFIX + String.format("%020d", base) + SEGMENT_SUFFIX);
+    }
+
+    private static boolean isSegment(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(Path file, int size) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    public record Batch(List<byte[]> payloads, long endOffset) {
+    }
+
+    private record Segment(long base, MappedByteBuffer buffer) {
+
+        int size() {
+            return buffer.capacity();
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import java.util.function.IntFunction;
+
+/**
+ * Splits the snapshot into independent partitions keyed by a hash of the product id.
+ * Each partition is owned by exactly one diff worker, so partitions are written
+ * concurrently without locking while each one stays single-threaded.
+ */
+public class PartitionedSnapshotStore implements StockSnapshotStore {
+
+    private final StockSnapshotStore[] partitions;
+    private final int partitionBits;
+
+    /**
+     * @param partitionCount power of two
+     */
+    public PartitionedSnapshotStore(int partitionCount, IntFunction<StockSnapshotStore> partitionFactory) {
+        if (Integer.bitCount(partitionCount) != 1) {
+            throw new IllegalArgumentException("Partition count must be a power of two: " + partitionCount);
+        }
+        this.partitions = new StockSnapshotStore[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = partitionFactory.apply(i);
+        }
+        this.partitionBits = Integer.numberOfTrailingZeros(partitionCount);
+    }
+
+    public int partitionCount() {
+        return partitions.length;
+    }
+
+    public int partitionOf(long productId) {
+        return SnapshotHashing.partition(productId, partitionBits);
+    }
+
+    public StockSnapshotStore partition(int index) {
+        return partitions[index];
+    }
+
+    @Override
+    public int get(long productId) {
+        return partitions[partitionOf(productId)].get(productId);
+    }
+
+    @Override
+    public int put(long productId, int quantity) {
+        return partitions[partitionOf(productId)].put(productId, quantity);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (StockSnapshotStore partition : partitions) {
+            size += partition.size();
+        }
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (StockSnapshotStore partition : partitions) {
+            partition.clear();
+        }
+    }
+
+    @Override
+    public void forEach(EntryConsumer consumer) {
+        for (StockSnapshotStore partition : partitions) {
+            partition.forEach(consumer);
+        }
+    }
+
+    @Override
+    public long memoryFootprintBytes() {
+        long bytes = 0;
+        for (StockSnapshotStore partition : partitions) {
+            bytes += partition.memoryFootprintBytes();
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,231 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persists a {@link StockSnapshotStore} and the poll watermark to a local directory.
+ * <p>
+ * Changed entries are appended to {@code stock-snapshot-<generation>.log} as CRC-protected
+ * frames, so a checkpoint costs only the entries recorded since the previous one. Once the
+ * log outgrows the compacted image {@code stock-snapshot.img}, the whole store is rewritten
+ * to a new image of the next generation (atomic rename) and a fresh log is started.
+ * Recovery reads the image and replays the log of the same generation, dropping a torn
+ * trailing frame; logs of older generations are already folded into the image.
+ * <p>
+ * All methods are synchronized because parallel diff workers record concurrently. That
+ * does not guard the store passed to {@link #checkpoint}: callers must not checkpoint
+ * while it is being mutated, which is why the monitor only checkpoints while holding its
+ * poll flag.
+ */
+public class SnapshotCheckpoint {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotCheckpoint.class);
+
+    private static final int IMAGE_MAGIC = 0x50565353; // "PVSS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int WATERMARK_BYTES = Long.BYTES + Integer.BYTES;
+    private static final int IMAGE_HEADER_BYTES = 2 * Integer.BYTES + Long.BYTES + 1 + WATERMARK_BYTES + Integer.BYTES;
+    private static final int FRAME_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final long MIN_COMPACTION_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final Path imageFile;
+    private long generation;
+
+    private long[] pendingIds = new long[1024];
+    private int[] pendingQuantities = new int[1024];
+    private int pendingCount;
+
+    private LocalDateTime lastWatermark;
+    private long imageBytes;
+    private long logBytes;
+
+    public SnapshotCheckpoint(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create checkpoint directory " + directory, e);
+        }
+        this.directory = directory;
+        this.imageFile = directory.resolve("stock-snapshot.img");
+    }
+
+    /**
+     * Remember a changed entry for the next checkpoint.
+     */
+    public synchronized void record(long productId, int quantity) {
+        if (pendingCount == pendingIds.length) {
+            pendingIds = Arrays.copyOf(pendingIds, pendingCount << 1);
+            pendingQuantities = Arrays.copyOf(pendingQuantities, pendingCount << 1);
+        }
+        pendingIds[pendingCount] = productId;
+        pendingQuantities[pendingCount] = quantity;
+        pendingCount++;
+    }
+
+    /**
+     * Fill {@code store} from the image and log on disk.
+     *
+     * @return the persisted watermark, or null if there is no usable checkpoint
+     */
+    public synchronized LocalDateTime load(StockSnapshotStore store) throws IOException {
+        LocalDateTime watermark = null;
+        imageBytes = 0;
+        logBytes = 0;
+        if (Files.exists(imageFile)) {
+            try (FileChannel channel = FileChannel.open(imageFile, StandardOpenOption.READ)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.remaining() < IMAGE_HEADER_BYTES || buffer.getInt() != IMAGE_MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                    throw new IOException("Unrecognized snapshot image " + imageFile);
+                }
+                generation = buffer.getLong();
+                watermark = readWatermark(buffer);
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++) {
+                    store.put(buffer.getLong(), buffer.getInt());
+                }
+                imageBytes = channel.size();
+            }
+        }
+        deleteStaleLogs();
+        Path logFile = logFile(generation);
+        if (Files.exists(logFile)) {
+            try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                CRC32C crc = new CRC32C();
+                while (buffer.remaining() >= FRAME_HEADER_BYTES) {
+                    int start = buffer.position();
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length < WATERMARK_BYTES + 1 || length > buffer.remaining()) {
+                        buffer.position(start);
+                        break;
+                    }
+                    ByteBuffer frame = buffer.slice(buffer.position(), length);
+                    crc.reset();
+                    crc.update(frame.duplicate());
+                    if ((int) crc.getValue() != checksum) {
+                        buffer.position(start);
+                        break;
+                    }
+                    LocalDateTime frameWatermark = readWatermark(frame);
+                    while (frame.remaining() >= ENTRY_BYTES) {
+                        store.put(frame.getLong(), frame.getInt());
+                    }
+                    if (frameWatermark != null) {
+                        watermark = frameWatermark;
+                    }
+                    buffer.position(buffer.position() + length);
+                }
+                logBytes = buffer.position();
+                if (logBytes < channel.size()) {
+                    logger.warn("Discarding {} bytes of torn checkpoint log {}", channel.size() - logBytes, logFile);
+                    channel.truncate(logBytes);
+                }
+            }
+        }
+        lastWatermark = watermark;
+        pendingCount = 0;
+        return watermark;
+    }
+
+    /**
+     * Persist the entries recorded since the last checkpoint together with the watermark,
+     * compacting into a fresh image when the log has grown past it.
+     */
+    public synchronized void checkpoint(StockSnapshotStore store, LocalDateTime watermark) throws IOException {
+        if (pendingCount == 0 && (watermark == null || watermark.equals(lastWatermark))) {
+            return;
+        }
+        long frameBytes = FRAME_HEADER_BYTES + 1L + WATERMARK_BYTES + (long) pendingCount * ENTRY_BYTES;
+        if (logBytes + frameBytes > Math.max(imageBytes, MIN_COMPACTION_BYTES)) {
+            compact(store, watermark);
+        } else {
+            appendFrame(watermark);
+        }
+        pendingCount = 0;
+        lastWatermark = watermark;
+    }
+
+    private void appendFrame(LocalDateTime watermark) throws IOException {
+        int payloadBytes = 1 + WATERMARK_BYTES + pendingCount * ENTRY_BYTES;
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_BYTES + payloadBytes);
+        buffer.position(FRAME_HEADER_BYTES);
+        writeWatermark(buffer, watermark);
+        for (int i = 0; i < pendingCount; i++) {
+            buffer.putLong(pendingIds[i]).putInt(pendingQuantities[i]);
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.array(), FRAME_HEADER_BYTES, payloadBytes);
+        buffer.putInt(0, payloadBytes).putInt(Integer.BYTES, (int) crc.getValue());
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(logFile(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+        logBytes += buffer.limit();
+    }
+
+    private void compact(StockSnapshotStore store, LocalDateTime watermark) throws IOException {
+        Path tempFile = imageFile.resolveSibling(imageFile.getFileName() + ".tmp");
+        long bytes = IMAGE_HEADER_BYTES + (long) store.size() * ENTRY_BYTES;
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            buffer.putInt(IMAGE_MAGIC).putInt(FORMAT_VERSION).putLong(generation + 1);
+            writeWatermark(buffer, watermark);
+            buffer.putInt(store.size());
+            store.forEach((productId, quantity) -> buffer.putLong(productId).putInt(quantity));
+            channel.force(true);
+        }
+        Files.move(tempFile, imageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        generation++;
+        deleteStaleLogs();
+        imageBytes = bytes;
+        logBytes = 0;
+        logger.debug("Compacted stock snapshot checkpoint: {} entries, {} bytes", store.size(), bytes);
+    }
+
+    private Path logFile(long logGeneration) {
+        return directory.resolve("stock-snapshot-" + logGeneration + ".log");
+    }
+
+    private void deleteStaleLogs() throws IOException {
+        for (long stale = generation - 1; stale >= 0 && Files.deleteIfExists(logFile(stale)); stale--) {
+            logger.debug("Deleted checkpoint log of generation {}", stale);
+        }
+    }
+
+    private static void writeWatermark(ByteBuffer buffer, LocalDateTime watermark) {
+        if (watermark == null) {
+            buffer.put((byte) 0).putLong(0L).putInt(0);
+        } else {
+            buffer.put((byte) 1).putLong(watermark.toEpochSecond(ZoneOffset.UTC)).putInt(watermark.getNano());
+        }
+    }
+
+    private static LocalDateTime readWatermark(ByteBuffer buffer) {
+        boolean present = buffer.get() != 0;
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        return present ? LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC) : null;
+    }
+}
@@ -0,0 +1,31 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+public final class SnapshotHashing {
+
+    private SnapshotHashing() {
+    }
+
+    /**
+     * Spread sequential product ids across the table (fmix64 finalizer from MurmurHash3)
+     * so identity-generated ids do not cluster in linear probing.
+     */
+    public static long mix(long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Table slot from the low bits of the mixed hash. */
+    static int slot(long key, int mask) {
+        return (int) mix(key) & mask;
+    }
+
+    /** Partition from the high bits of the mixed hash, independent of the slot bits. */
+    static int partition(long key, int partitionBits) {
+        return partitionBits == 0 ? 0 : (int) (mix(key) >>> (64 - partitionBits));
+    }
+}
@@ -0,0 +1,36 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+/**
+ * Primitive long to int map holding the last known quantity per product.
+ * Implementations avoid boxing so a poll over the whole catalog allocates
+ * nothing per product. They are not thread-safe: a single poll thread writes.
+ */
+public interface StockSnapshotStore {
+
+    /** Returned by {@link #get} and {@link #put} when the product has no snapshot yet. */
+    int MISSING = Integer.MIN_VALUE;
+
+    int get(long productId);
+
+    /**
+     * Store the quantity for a product.
+     *
+     * @return the previous quantity, or {@link #MISSING} if there was none
+     */
+    int put(long productId, int quantity);
+
+    int size();
+
+    void clear();
+
+    /** Visit every entry; used for reconciliation and checkpoints. */
+    void forEach(EntryConsumer consumer);
+
+    /** Bytes held by the backing arrays or buffers, excluding the object header. */
+    long memoryFootprintBytes();
+
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(long productId, int quantity);
+    }
+}
@@ -0,0 +1,31 @@
+-- Change log read by stock.monitoring.change-source.type=changelog.
+-- Not part of spring.sql.init: run once against the schema that owns PRODUCT.
+
+CREATE TABLE STOCK_CHANGE_LOG (
+    SEQ_ID     NUMBER GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    PRODUCT_ID NUMBER NOT NULL,
+    CHANGED_AT TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL
+);
+
+CREATE INDEX STOCK_CHANGE_LOG_CHANGED_AT ON STOCK_CHANGE_LOG (CHANGED_AT);
+
+-- One entry per row whose stock or active flag actually changed, whoever wrote it
+CREATE OR REPLACE TRIGGER PRODUCT_STOCK_CHANGE_LOG
+AFTER INSERT OR UPDATE OF QUANTITY, ACTIVE ON PRODUCT
+FOR EACH ROW
+WHEN (OLD.ID IS NULL OR NEW.QUANTITY <> OLD.QUANTITY OR NEW.ACTIVE <> OLD.ACTIVE)
+BEGIN
+    INSERT INTO STOCK_CHANGE_LOG (PRODUCT_ID) VALUES (:NEW.ID);
+END;
+/
+
+-- Monitors only read the log; entries are purged here once no node can still need them
+BEGIN
+    DBMS_SCHEDULER.CREATE_JOB(
+        job_name        => 'PURGE_STOCK_CHANGE_LOG',
+        job_type        => 'PLSQL_BLOCK',
+        job_action      => 'BEGIN DELETE FROM STOCK_CHANGE_LOG WHERE CHANGED_AT < SYSTIMESTAMP - INTERVAL ''1'' HOUR; COMMIT; END;',
+        repeat_interval => 'FREQ=MINUTELY;INTERVAL=10',
+        enabled         => TRUE);
+END;
+/
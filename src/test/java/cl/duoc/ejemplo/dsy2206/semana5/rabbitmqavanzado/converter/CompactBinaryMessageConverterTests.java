@@ -0,0 +1,58 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.converter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.ContentTypeDelegatingMessageConverter;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.ProductoDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+class CompactBinaryMessageConverterTests {
+
+	private final CompactBinaryMessageConverter binary = new CompactBinaryMessageConverter();
+
+	@Test
+	void stockChangeEventRoundTripsAndIsSmallerThanJson() {
+
+		StockChangeEventDTO event = new StockChangeEventDTO(123456L, "Zapatilla Running Ñandú", "Calzado", 3, 97,
+				new BigDecimal("89970.00"), LocalDateTime.of(2025, 6, 1, 12, 30, 15, 123_000_000));
+
+		Message message = binary.toMessage(event, new MessageProperties());
+
+		assertEquals(CompactBinaryMessageConverter.CONTENT_TYPE, message.getMessageProperties().getContentType());
+		assertEquals(event, binary.fromMessage(message));
+		Message json = new Jackson2JsonMessageConverter().toMessage(event, new MessageProperties());
+		assertTrue(message.getBody().length * 2 < json.getBody().length);
+	}
+
+	@Test
+	void productoRoundTripsWithNullsAndLargeDecimals() {
+
+		ProductoDTO producto = new ProductoDTO(7L, "Notebook", null, 0, "Tecnologia", true,
+				new BigDecimal("123456789012345678901234567890.99"), null, BigDecimal.ZERO, null);
+
+		assertEquals(producto, binary.fromMessage(binary.toMessage(producto, new MessageProperties())));
+	}
+
+	@Test
+	void delegatingConverterStillReadsJson() {
+
+		ContentTypeDelegatingMessageConverter converter = new ContentTypeDelegatingMessageConverter(
+				new Jackson2JsonMessageConverter());
+		converter.addDelegate(CompactBinaryMessageConverter.CONTENT_TYPE, binary);
+		StockChangeEventDTO event = new StockChangeEventDTO(1L, "Polera", "Ropa", 1, 9, new BigDecimal("9990.00"),
+				LocalDateTime.of(2025, 6, 1, 12, 0));
+
+		Message json = new Jackson2JsonMessageConverter().toMessage(event, new MessageProperties());
+
+		assertEquals(event, converter.fromMessage(json));
+	}
+}
@@ -0,0 +1,39 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+
+class CatalogVersionDTOTests {
+
+	private static final LocalDateTime UPDATED = LocalDateTime.of(2024, 1, 1, 12, 0);
+
+	@Test
+	void offsettingStockChangesWithoutVersionBumpChangeTheTag() {
+
+		String before = CatalogVersionDTO.of(List.of(product(1L, 10, "5.00"), product(2L, 10, "5.00"))).toETag();
+		// A sale of 3 on one product and a restock of 3 on the other, both by SQL that leaves VERSION alone
+		String after = CatalogVersionDTO.of(List.of(product(1L, 7, "5.00"), product(2L, 13, "5.00"))).toETag();
+
+		assertNotEquals(before, after);
+	}
+
+	@Test
+	void priceEditsWithoutVersionBumpChangeTheTag() {
+
+		assertNotEquals(ProductVersionDTO.of(product(1L, 10, "5.00")).toETag(), ProductVersionDTO.of(product(1L, 10, "6.00")).toETag());
+		assertEquals(ProductVersionDTO.of(product(1L, 10, "5.00")).toETag(), ProductVersionDTO.of(product(1L, 10, "5.00")).toETag());
+	}
+
+	private static Product product(Long id, int quantity, String price) {
+
+		return new Product(id, "p" + id, null, quantity, "c", true, new BigDecimal(price), UPDATED, null, 1L);
+	}
+}
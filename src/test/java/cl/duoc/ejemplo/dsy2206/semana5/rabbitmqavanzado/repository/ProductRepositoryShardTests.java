@@ -0,0 +1,82 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+
+@DataJpaTest(properties = { "spring.jpa.database-platform=org.hibernate.dialect.H2Dialect",
+		"spring.jpa.hibernate.ddl-auto=create-drop" })
+class ProductRepositoryShardTests {
+
+	private static final int SHARDS = 4;
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	private final List<Long> ids = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() {
+
+		for (int i = 0; i < 12; i++) {
+			Product product = new Product();
+			product.setName("p" + i);
+			product.setCategory("c");
+			product.setQuantity(i);
+			product.setPrice(BigDecimal.ONE);
+			product.setActive(i != 5);
+			ids.add(productRepository.save(product).getId());
+		}
+		productRepository.flush();
+	}
+
+	@Test
+	void ownedShardsSelectOnlyTheirProducts() {
+
+		Set<Integer> owned = Set.of(1, 3);
+		List<Long> expected = ids.stream().filter(id -> !id.equals(ids.get(5)) && owned.contains((int) (id % SHARDS))).toList();
+
+		assertEquals(expected, snapshotIds(productRepository.streamActiveStockSnapshots(null, 100, SHARDS, owned)));
+	}
+
+	@Test
+	void shardsPartitionTheActiveCatalog() {
+
+		List<Long> all = new ArrayList<>();
+		for (int shard = 0; shard < SHARDS; shard++) {
+			all.addAll(snapshotIds(productRepository.streamActiveStockSnapshots(null, 100, SHARDS, Set.of(shard))));
+		}
+
+		assertEquals(snapshotIds(productRepository.streamActiveStockSnapshots(null, 100, SHARDS, null)), all.stream().sorted().toList());
+		assertEquals(11, all.size());
+		assertEquals(List.of(), snapshotIds(productRepository.streamActiveStockSnapshots(null, 100, SHARDS, Set.of())));
+	}
+
+	@Test
+	void watermarkAndShardFiltersCombine() {
+
+		LocalDateTime future = LocalDateTime.now().plusDays(1);
+
+		assertEquals(List.of(), snapshotIds(productRepository.streamActiveStockSnapshots(future, 100, SHARDS, Set.of(0, 1, 2, 3))));
+	}
+
+	private static List<Long> snapshotIds(Stream<StockSnapshotDTO> snapshots) {
+
+		try (snapshots) {
+			return snapshots.map(StockSnapshotDTO::getId).sorted().toList();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class AdaptivePollIntervalTests {
+
+	@Test
+	void backsOffExponentiallyWhileIdleAndSpeedsUpUnderLoad() {
+
+		AdaptivePollInterval interval = new AdaptivePollInterval(10_000, 1_000, 60_000, 100, 2.0);
+		assertFalse(interval.isFixed());
+
+		assertEquals(20_000, interval.onPoll(0));
+		assertEquals(40_000, interval.onPoll(0));
+		assertEquals(60_000, interval.onPoll(0));
+		assertEquals(60_000, interval.onPoll(0));
+
+		// A few changes keep the current interval
+		assertEquals(60_000, interval.onPoll(5));
+
+		for (int i = 0; i < 10; i++) {
+			interval.onPoll(500);
+		}
+		assertEquals(1_000, interval.currentMs());
+	}
+
+	@Test
+	void fixedIntervalNeverMoves() {
+
+		AdaptivePollInterval interval = AdaptivePollInterval.fixed(30_000);
+		// Scheduled at a fixed rate rather than as a delay after each poll
+		assertTrue(interval.isFixed());
+
+		assertEquals(30_000, interval.onPoll(0));
+		assertEquals(30_000, interval.onPoll(1_000_000));
+	}
+}
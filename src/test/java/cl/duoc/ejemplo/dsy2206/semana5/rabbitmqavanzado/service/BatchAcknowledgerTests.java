@@ -0,0 +1,56 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import com.rabbitmq.client.Channel;
+
+class BatchAcknowledgerTests {
+
+	@Test
+	void acksContiguousPrefixOnceBatchIsFull() throws IOException {
+
+		Channel channel = mock(Channel.class);
+		BatchAcknowledger acknowledger = new BatchAcknowledger(3);
+		for (long tag = 1; tag <= 4; tag++) {
+			acknowledger.received(channel, tag);
+		}
+		// 2, 3 and 4 finish before 1: nothing is ackable until 1 completes
+		acknowledger.ack(channel, 2);
+		acknowledger.ack(channel, 4);
+		acknowledger.ack(channel, 3);
+		verify(channel, never()).basicAck(anyLong(), anyBoolean());
+
+		acknowledger.ack(channel, 1);
+		verify(channel).basicAck(4, true);
+	}
+
+	@Test
+	void nacksImmediatelyAndNeverAcksUpToANackedTag() throws IOException {
+
+		Channel channel = mock(Channel.class);
+		when(channel.isOpen()).thenReturn(true);
+		BatchAcknowledger acknowledger = new BatchAcknowledger(10);
+		for (long tag = 1; tag <= 3; tag++) {
+			acknowledger.received(channel, tag);
+		}
+		acknowledger.ack(channel, 1);
+		acknowledger.ack(channel, 2);
+		acknowledger.nack(channel, 3, false);
+		acknowledger.flush();
+
+		InOrder order = inOrder(channel);
+		order.verify(channel).basicNack(3, false, false);
+		order.verify(channel).basicAck(2, true);
+	}
+}
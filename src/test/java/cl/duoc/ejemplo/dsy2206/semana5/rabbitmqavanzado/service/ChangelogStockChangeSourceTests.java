@@ -0,0 +1,175 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.repository.ProductRepository;
+
+class ChangelogStockChangeSourceTests {
+
+	private static final LocalDateTime WATERMARK = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+	private final AtomicLong clock = new AtomicLong();
+	private final ProductRepository productRepository = mock(ProductRepository.class);
+	private EmbeddedDatabase database;
+	private JdbcTemplate jdbcTemplate;
+	private ChangelogStockChangeSource source;
+
+	@BeforeEach
+	void setUp() {
+
+		database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2).generateUniqueName(true).build();
+		jdbcTemplate = new JdbcTemplate(database);
+		jdbcTemplate.execute("CREATE TABLE STOCK_CHANGE_LOG (SEQ_ID BIGINT PRIMARY KEY, PRODUCT_ID BIGINT NOT NULL,"
+				+ " CHANGED_AT TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL)");
+		when(productRepository.streamActiveStockSnapshots(any(), anyInt(), anyInt(), any())).thenReturn(Stream.empty());
+		when(productRepository.findActiveStockSnapshots(anyCollection())).thenAnswer(invocation -> {
+			Collection<Long> ids = invocation.getArgument(0);
+			return ids.stream().map(id -> new StockSnapshotDTO(id, "p" + id, "c", 1, null, null)).toList();
+		});
+		source = new ChangelogStockChangeSource(database, productRepository, 100, 5000, clock::get);
+	}
+
+	@AfterEach
+	void tearDown() {
+
+		database.shutdown();
+	}
+
+	@Test
+	void readsOnlyProductsLoggedAfterCommittedPosition() {
+
+		log(1, 10L);
+		// Position is unknown until the first tick, which falls back to the watermark query
+		assertEquals(List.of(), tick());
+		verify(productRepository).streamActiveStockSnapshots(WATERMARK, 100, 1, null);
+
+		log(2, 20L);
+		log(3, 30L);
+		log(4, 20L);
+		assertEquals(List.of(20L, 30L), tick());
+
+		// Idle: no new entries, no product query
+		reset(productRepository);
+		assertEquals(List.of(), tick());
+		verify(productRepository, never()).findActiveStockSnapshots(anyCollection());
+	}
+
+	@Test
+	void readsLateEntryOfSequenceGapOnce() {
+
+		tick();
+		log(1, 10L);
+		log(3, 30L);
+		assertEquals(List.of(10L, 30L), tick());
+
+		// Sequence 2 was taken before 3 but committed after it was read
+		log(2, 20L);
+		clock.addAndGet(1000);
+		assertEquals(List.of(20L), tick());
+
+		// Filled before its timeout: neither the gap nor what follows it is read again
+		reset(productRepository);
+		assertEquals(List.of(), tick());
+		verify(productRepository, never()).findActiveStockSnapshots(anyCollection());
+	}
+
+	@Test
+	void forgetsSequenceGapAfterTimeout() {
+
+		tick();
+		log(1, 10L);
+		log(4, 40L);
+		assertEquals(List.of(10L, 40L), tick());
+
+		log(2, 20L);
+		assertEquals(List.of(20L), tick());
+
+		// Sequence 3 never committed; once it expires a late entry for it is not picked up
+		clock.addAndGet(5000);
+		log(3, 30L);
+		log(5, 50L);
+		assertEquals(List.of(50L), tick());
+	}
+
+	@Test
+	void openGapDoesNotUseUpEntryBudget() {
+
+		source = new ChangelogStockChangeSource(database, productRepository, 2, 5000, clock::get);
+		tick();
+		log(1, 10L);
+		log(3, 30L);
+		log(4, 40L);
+		assertEquals(List.of(10L, 30L), tick());
+		assertEquals(List.of(40L), tick());
+
+		// Sequence 2 is still open, yet each tick reads two new entries
+		log(5, 50L);
+		log(6, 60L);
+		log(7, 70L);
+		assertEquals(List.of(50L, 60L), tick());
+		log(2, 20L);
+		assertEquals(List.of(20L, 70L), tick());
+	}
+
+	@Test
+	void fullScanTracksHolesBelowLogEnd() {
+
+		// Sequence 2 is still uncommitted while the full scan runs
+		log(1, 10L);
+		log(3, 30L);
+		assertEquals(List.of(), tick());
+
+		log(2, 20L);
+		assertEquals(List.of(20L), tick());
+		assertEquals(List.of(), tick());
+	}
+
+	@Test
+	void uncommittedTickIsReadAgain() {
+
+		tick();
+		log(1, 10L);
+		try (Stream<StockSnapshotDTO> rows = source.open(WATERMARK, 100, null)) {
+			assertEquals(1, rows.count());
+		}
+		// Diff failed, commit() not called
+		assertEquals(List.of(10L), tick());
+	}
+
+	private List<Long> tick() {
+
+		try (Stream<StockSnapshotDTO> rows = source.open(WATERMARK, 100, null)) {
+			List<Long> ids = rows.map(StockSnapshotDTO::getId).toList();
+			source.commit();
+			return ids;
+		}
+	}
+
+	private void log(long seq, Long productId) {
+
+		jdbcTemplate.update("INSERT INTO STOCK_CHANGE_LOG (SEQ_ID, PRODUCT_ID) VALUES (?, ?)", seq, productId);
+	}
+}
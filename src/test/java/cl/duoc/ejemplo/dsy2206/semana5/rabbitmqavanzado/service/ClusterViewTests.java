@@ -0,0 +1,83 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+class ClusterViewTests {
+
+	private static final int SHARDS = 64;
+	private static final long TIMEOUT = 15_000;
+
+	private final AtomicLong clock = new AtomicLong(1_000_000);
+
+	@Test
+	void everyShardHasExactlyOneOwner() {
+
+		List<ClusterView> nodes = startNodes("a", "b", "c");
+		List<ShardOwnership> ownerships = nodes.stream().map(ClusterView::currentOwnership).toList();
+		for (int shard = 0; shard < SHARDS; shard++) {
+			int owners = 0;
+			for (ShardOwnership ownership : ownerships) {
+				owners += ownership.owns(shard) ? 1 : 0;
+			}
+			assertEquals(1, owners, "owners of shard " + shard);
+		}
+		ownerships.forEach(ownership -> assertTrue(ownership.ownedShards().size() > SHARDS / 6, ownership.toString()));
+	}
+
+	@Test
+	void joiningNodeOwnsNothingUntilItHasHeardItsPeers() {
+
+		ClusterView node = new ClusterView("a", SHARDS, TIMEOUT, clock::get);
+		assertTrue(node.currentOwnership().isEmpty());
+		clock.addAndGet(TIMEOUT);
+		assertEquals(SHARDS, node.currentOwnership().ownedShards().size());
+	}
+
+	@Test
+	void onlyTheDepartedNodesShardsMove() {
+
+		List<ClusterView> nodes = startNodes("a", "b", "c");
+		ShardOwnership beforeA = nodes.get(0).currentOwnership();
+		ShardOwnership beforeB = nodes.get(1).currentOwnership();
+
+		// "c" stops heartbeating; "a" and "b" keep seeing each other
+		clock.addAndGet(TIMEOUT + 1);
+		nodes.get(0).onHeartbeat("b");
+		nodes.get(1).onHeartbeat("a");
+		ShardOwnership afterA = nodes.get(0).currentOwnership();
+		ShardOwnership afterB = nodes.get(1).currentOwnership();
+
+		for (int shard = 0; shard < SHARDS; shard++) {
+			assertTrue(!beforeA.owns(shard) || afterA.owns(shard), "shard " + shard + " moved away from a");
+			assertTrue(!beforeB.owns(shard) || afterB.owns(shard), "shard " + shard + " moved away from b");
+			assertTrue(afterA.owns(shard) ^ afterB.owns(shard), "shard " + shard + " needs exactly one owner");
+		}
+	}
+
+	@Test
+	void leaveRebalancesImmediately() {
+
+		List<ClusterView> nodes = startNodes("a", "b");
+		nodes.get(0).onLeave("b");
+		assertEquals(SHARDS, nodes.get(0).currentOwnership().ownedShards().size());
+	}
+
+	private List<ClusterView> startNodes(String... ids) {
+
+		List<ClusterView> nodes = Arrays.stream(ids).map(id -> new ClusterView(id, SHARDS, TIMEOUT, clock::get)).toList();
+		clock.addAndGet(TIMEOUT);
+		for (ClusterView node : nodes) {
+			for (String id : ids) {
+				node.onHeartbeat(id);
+			}
+		}
+		return nodes;
+	}
+}
@@ -0,0 +1,76 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.PriceChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+
+class PriceChangeDetectorTests {
+
+	private final PriceChangeDetector detector = new PriceChangeDetector(new BigDecimal("5.0"), 16);
+
+	@Test
+	void reportsChangesAtOrAboveThresholdAgainstLastNotifiedPrice() {
+
+		detector.seed(List.of(row(1L, "100.00"), row(2L, "100.00")));
+		List<PriceChangeEventDTO> events = new ArrayList<>();
+
+		// 4% is ignored and keeps the baseline; the next 1% step makes it 5% and is reported
+		detector.detect(List.of(row(1L, "104.00"), row(2L, "95.00")), events);
+		assertEquals(1, events.size());
+		assertEquals(2L, events.get(0).getProductId());
+		assertEquals(new BigDecimal("-5.00"), events.get(0).getChangeAmount());
+		assertEquals(-5.0, events.get(0).getChangePercentage(), 1e-9);
+
+		events.clear();
+		detector.detect(List.of(row(1L, "105.00"), row(2L, "95.00")), events);
+		assertEquals(1, events.size());
+		assertEquals(new BigDecimal("100.00"), events.get(0).getOldPrice());
+		assertEquals("PRICE_INCREASE", events.get(0).getChangeReason());
+	}
+
+	@Test
+	void unpublishedChangesAreReportedAgainAfterRestore() {
+
+		detector.seed(List.of(row(1L, "10.00")));
+		List<PriceChangeEventDTO> events = new ArrayList<>();
+		detector.detect(List.of(row(1L, "20.00")), events);
+		detector.restore(events);
+
+		List<PriceChangeEventDTO> again = new ArrayList<>();
+		detector.detect(List.of(row(1L, "20.00")), again);
+		assertEquals(1, again.size());
+
+		// Products first seen after the baseline are only recorded
+		again.clear();
+		detector.detect(List.of(row(3L, "1.00")), again);
+		assertTrue(again.isEmpty());
+		assertEquals(2, detector.trackedProducts());
+	}
+
+	@Test
+	void productsOfReleasedShardsAreBaselinedAgainWhenRegained() {
+
+		detector.seed(List.of(row(0L, "10.00"), row(1L, "10.00"), row(2L, "10.00")));
+		detector.retain(productId -> productId % 2 == 0);
+		assertEquals(2, detector.trackedProducts());
+
+		// Product 1 moved while another node owned it: that node reported it, this one only re-baselines
+		List<PriceChangeEventDTO> events = new ArrayList<>();
+		detector.detect(List.of(row(0L, "20.00"), row(1L, "20.00")), events);
+		assertEquals(List.of(0L), events.stream().map(PriceChangeEventDTO::getProductId).toList());
+		assertEquals(3, detector.trackedProducts());
+	}
+
+	private static StockSnapshotDTO row(Long id, String price) {
+
+		return new StockSnapshotDTO(id, "p" + id, "c", 1, new BigDecimal(price), null);
+	}
+}
@@ -0,0 +1,67 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator.Mode;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.SalesWindowAggregator.Span;
+
+class SalesWindowAggregatorTests {
+
+	// Aligned to the hour so tumbling periods start at the beginning of the test
+	private final AtomicLong clock = new AtomicLong(1_700_000_000_000L / 3_600_000 * 3_600_000);
+	private final SalesWindowAggregator aggregator = new SalesWindowAggregator(clock::get, 0);
+
+	@Test
+	void slidingWindowExpiresOldSales() {
+
+		aggregator.record(List.of(sale(1L, "bebidas", 2, "3.50"), sale(2L, "snacks", 1, "1.00")));
+		clock.addAndGet(30_000);
+		aggregator.record(List.of(sale(1L, "bebidas", 1, "1.75")));
+
+		assertEquals(new BigDecimal("5.25"), aggregator.categoryTotal(Span.ONE_MINUTE, Mode.SLIDING, "bebidas").getRevenue());
+		assertEquals(3, aggregator.categoryTotal(Span.ONE_MINUTE, Mode.SLIDING, "bebidas").getUnits());
+
+		// The first batch leaves the 1m window, the second one is still inside it
+		clock.addAndGet(45_000);
+		SalesTotalDTO bebidas = aggregator.categoryTotal(Span.ONE_MINUTE, Mode.SLIDING, "bebidas");
+		assertEquals(1, bebidas.getUnits());
+		assertEquals(new BigDecimal("1.75"), bebidas.getRevenue());
+		assertEquals(0, aggregator.categoryTotal(Span.ONE_MINUTE, Mode.SLIDING, "snacks").getUnits());
+		assertEquals(4, aggregator.categoryTotal(Span.FIVE_MINUTES, Mode.SLIDING, "bebidas").getUnits()
+				+ aggregator.categoryTotal(Span.FIVE_MINUTES, Mode.SLIDING, "snacks").getUnits());
+	}
+
+	@Test
+	void tumblingWindowResetsAtPeriodBoundary() {
+
+		aggregator.record(List.of(sale(1L, "bebidas", 2, "3.50")));
+		assertEquals(2, aggregator.categoryTotal(Span.ONE_MINUTE, Mode.TUMBLING, "bebidas").getUnits());
+
+		clock.addAndGet(60_000);
+		assertEquals(0, aggregator.categoryTotal(Span.ONE_MINUTE, Mode.TUMBLING, "bebidas").getUnits());
+		assertEquals(2, aggregator.categoryTotal(Span.ONE_HOUR, Mode.TUMBLING, "bebidas").getUnits());
+	}
+
+	@Test
+	void topProductsAreRankedByRevenue() {
+
+		aggregator.record(List.of(sale(1L, "bebidas", 10, "10.00"), sale(2L, "snacks", 1, "50.00"), sale(3L, "snacks", 3, "30.00")));
+
+		List<SalesTotalDTO> top = aggregator.topProducts(Span.FIVE_MINUTES, Mode.SLIDING, 2);
+		assertEquals(List.of("2", "3"), top.stream().map(SalesTotalDTO::getKey).toList());
+	}
+
+	private static StockChangeEventDTO sale(Long productId, String category, int units, String total) {
+
+		return StockChangeEventDTO.builder().productId(productId).productCategory(category).quantityChanged(units)
+				.saleTotal(new BigDecimal(total)).build();
+	}
+}
@@ -0,0 +1,66 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockSnapshotDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.OpenAddressingSnapshotStore;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store.PartitionedSnapshotStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StockChangeMonitoringServiceTests {
+
+	private final StockChangeSource source = mock(StockChangeSource.class);
+	private final StockChangeNotificationService notificationService = mock(StockChangeNotificationService.class);
+	private final PartitionedSnapshotStore store = new PartitionedSnapshotStore(2, partition -> new OpenAddressingSnapshotStore(16));
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void tickFailingMidStreamWaitsForItsChunksAndDoesNotPoisonTheNextTick() throws Exception {
+
+		when(notificationService.isNotificationsEnabled()).thenReturn(true);
+		// The chunk is still on its worker when the source fails, and then fails as well
+		doAnswer(invocation -> {
+			Thread.sleep(200);
+			throw new IllegalStateException("broker down");
+		}).when(notificationService).notifyStockChanges(anyList());
+		StockSnapshotDTO sold = new StockSnapshotDTO(1L, "p1", "c", 5, null, null);
+		StockSnapshotDTO unreadable = new StockSnapshotDTO(2L, "p2", "c", 5, null, null);
+		when(source.open(any(), anyInt(), any()))
+				.thenReturn(Stream.of(sold, unreadable).map(row -> {
+					if (row == unreadable) {
+						throw new IllegalStateException("connection reset");
+					}
+					return row;
+				}))
+				.thenReturn(Stream.empty());
+		store.put(1L, 10);
+
+		StockChangeMonitoringService monitoringService = new StockChangeMonitoringService(source, notificationService, store,
+				mock(ObjectProvider.class), mock(ObjectProvider.class), AdaptivePollInterval.fixed(1000),
+				new SimpleMeterRegistry(), 4);
+		ReflectionTestUtils.setField(monitoringService, "chunkSize", 1);
+
+		monitoringService.monitorStockChanges();
+		// The worker finished with the store before the poll flag was released
+		assertEquals(5, store.get(1L));
+		verify(source, never()).commit();
+
+		monitoringService.monitorStockChanges();
+		verify(source).commit();
+		monitoringService.checkpointOnShutdown();
+	}
+}
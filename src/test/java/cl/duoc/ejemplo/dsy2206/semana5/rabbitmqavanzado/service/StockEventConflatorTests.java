@@ -0,0 +1,82 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+
+class StockEventConflatorTests {
+
+	@Test
+	void mergesEventsPerProductUntilFlush() {
+
+		StockEventConflator conflator = new StockEventConflator();
+		conflator.add(List.of(sale(1L, 2, 8, "3.00"), sale(2L, 1, 4, "1.00"), sale(1L, 3, 5, "4.50")));
+
+		List<StockChangeEventDTO> flushed = conflator.flush();
+		assertEquals(2, flushed.size());
+		StockChangeEventDTO first = flushed.stream().filter(event -> event.getProductId() == 1L).findFirst().orElseThrow();
+		assertEquals(5, first.getQuantityChanged());
+		assertEquals(5, first.getNewQuantity());
+		assertEquals(new BigDecimal("7.50"), first.getSaleTotal());
+		assertEquals(1, conflator.getMergedEventCount());
+		assertEquals(List.of(), conflator.flush());
+	}
+
+	@Test
+	void concurrentFlushesPreserveTotals() throws Exception {
+
+		StockEventConflator conflator = new StockEventConflator();
+		int writers = 4;
+		int eventsPerWriter = 20_000;
+		ExecutorService executor = Executors.newFixedThreadPool(writers);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<?>> tasks = new ArrayList<>();
+		for (int w = 0; w < writers; w++) {
+			tasks.add(executor.submit(() -> {
+				start.await();
+				for (int i = 0; i < eventsPerWriter; i++) {
+					conflator.add(sale((long) (i % 8), 1, 0, "0.01"));
+				}
+				return null;
+			}));
+		}
+		long units = 0;
+		BigDecimal revenue = BigDecimal.ZERO;
+		start.countDown();
+		while (!tasks.stream().allMatch(Future::isDone)) {
+			for (StockChangeEventDTO event : conflator.flush()) {
+				units += event.getQuantityChanged();
+				revenue = revenue.add(event.getSaleTotal());
+			}
+		}
+		for (StockChangeEventDTO event : conflator.flush()) {
+			units += event.getQuantityChanged();
+			revenue = revenue.add(event.getSaleTotal());
+		}
+		for (Future<?> task : tasks) {
+			task.get();
+		}
+		executor.shutdown();
+		executor.awaitTermination(5, TimeUnit.SECONDS);
+
+		assertEquals((long) writers * eventsPerWriter, units);
+		assertEquals(new BigDecimal("800.00"), revenue);
+	}
+
+	private static StockChangeEventDTO sale(Long productId, int units, int newQuantity, String total) {
+
+		return StockChangeEventDTO.builder().productId(productId).quantityChanged(units).newQuantity(newQuantity)
+				.saleTotal(new BigDecimal(total)).build();
+	}
+}
@@ -0,0 +1,55 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.AmqpTemplate;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+
+class TieredRetryRecovererTests {
+
+	private final AmqpTemplate amqpTemplate = mock(AmqpTemplate.class);
+	private final TieredRetryRecoverer recoverer = new TieredRetryRecoverer(amqpTemplate, 2, "stock-change-dlx", "dlq");
+
+	@Test
+	void failedMessagesMoveThroughEachTierOfTheirQueue() {
+
+		Message first = message("stock-changes", null);
+		Message second = message("stock-changes.p1", 1);
+		recoverer.recover(first, new IllegalStateException("boom"));
+		recoverer.recover(second, new IllegalStateException("boom"));
+
+		verify(amqpTemplate).send("", "stock-changes.retry.1", first);
+		verify(amqpTemplate).send("", "stock-changes.p1.retry.2", second);
+		assertEquals(1, (Integer) first.getMessageProperties().getHeader(TieredRetryRecoverer.ATTEMPT_HEADER));
+		assertEquals(2, (Integer) second.getMessageProperties().getHeader(TieredRetryRecoverer.ATTEMPT_HEADER));
+		verify(amqpTemplate, never()).send(eq("stock-change-dlx"), anyString(), any(Message.class));
+	}
+
+	@Test
+	void deadLettersOnceEveryTierWasUsed() {
+
+		Message exhausted = message("stock-changes", 2);
+		recoverer.recover(exhausted, new RuntimeException(new IllegalArgumentException("bad payload")));
+
+		verify(amqpTemplate).send("stock-change-dlx", "dlq", exhausted);
+		assertEquals("bad payload", exhausted.getMessageProperties().getHeader("x-exception-message"));
+	}
+
+	private static Message message(String consumerQueue, Integer attempt) {
+
+		MessageProperties properties = new MessageProperties();
+		properties.setConsumerQueue(consumerQueue);
+		if (attempt != null) {
+			properties.setHeader(TieredRetryRecoverer.ATTEMPT_HEADER, attempt);
+		}
+		return new Message(new byte[0], properties);
+	}
+}
@@ -0,0 +1,57 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.config.CacheConfig;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.entity.Product;
+
+class ProductCacheRefresherTests {
+
+	private static final int PRODUCTS = 64;
+
+	@Test
+	void concurrentWorkersUpdatingOneListDoNotLoseUpdates() throws Exception {
+
+		CaffeineCacheManager cacheManager = new CaffeineCacheManager(CacheConfig.PRODUCTS_CACHE,
+				CacheConfig.PRODUCTS_BY_CATEGORY_CACHE, CacheConfig.ACTIVE_PRODUCTS_CACHE);
+		List<Product> catalog = new ArrayList<>();
+		for (long id = 1; id <= PRODUCTS; id++) {
+			catalog.add(new Product(id, "p" + id, null, 100, "c", true, BigDecimal.ONE, null, null, 1L));
+		}
+		cacheManager.getCache(CacheConfig.ACTIVE_PRODUCTS_CACHE).put(CacheConfig.ACTIVE_PRODUCTS_KEY, List.copyOf(catalog));
+		cacheManager.getCache(CacheConfig.PRODUCTS_BY_CATEGORY_CACHE).put("c", List.copyOf(catalog));
+		ProductCacheRefresher refresher = new ProductCacheRefresher(cacheManager);
+
+		// One worker per product, as partitioned diff workers never share a product
+		ExecutorService workers = Executors.newFixedThreadPool(8);
+		try {
+			CompletableFuture.allOf(IntStream.rangeClosed(1, PRODUCTS)
+					.mapToObj(id -> CompletableFuture.runAsync(() -> refresher.onStockChanges(List.of(StockChangeEventDTO.builder()
+							.productId((long) id).productCategory("c").newQuantity(100 - id).build())), workers))
+					.toArray(CompletableFuture[]::new)).get();
+		} finally {
+			workers.shutdown();
+		}
+
+		for (String cache : List.of(CacheConfig.ACTIVE_PRODUCTS_CACHE, CacheConfig.PRODUCTS_BY_CATEGORY_CACHE)) {
+			Object key = cache.equals(CacheConfig.ACTIVE_PRODUCTS_CACHE) ? CacheConfig.ACTIVE_PRODUCTS_KEY : "c";
+			List<?> refreshed = cacheManager.getCache(cache).get(key, List.class);
+			for (Object entry : refreshed) {
+				Product product = (Product) entry;
+				assertEquals(100 - product.getId(), product.getQuantity());
+			}
+		}
+	}
+}
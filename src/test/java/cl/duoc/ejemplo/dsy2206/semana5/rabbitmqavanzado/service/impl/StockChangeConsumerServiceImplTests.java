@@ -0,0 +1,53 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.Jackson2JsonMessageConverter;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.SalesTotalDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.TieredRetryRecoverer;
+
+class StockChangeConsumerServiceImplTests {
+
+	private final Jackson2JsonMessageConverter converter = new Jackson2JsonMessageConverter();
+	private final TieredRetryRecoverer retryRecoverer = mock(TieredRetryRecoverer.class);
+	private final StockChangeConsumerServiceImpl consumer = new StockChangeConsumerServiceImpl(converter, retryRecoverer);
+
+	@Test
+	void onlyThePoisonMessageOfABatchIsRetried() {
+
+		Message poison = new Message("{not json".getBytes(StandardCharsets.UTF_8), jsonProperties());
+		consumer.recibirLoteCambiosStock(List.of(sale(1L, 2, "3.00"), poison, sale(2L, 1, "1.50")));
+
+		verify(retryRecoverer).recover(eq(poison), any());
+		List<SalesTotalDTO> totals = consumer.getCategoryTotals();
+		assertEquals(1, totals.size());
+		assertEquals(3, totals.get(0).getUnits());
+		assertEquals(new BigDecimal("4.50"), totals.get(0).getRevenue());
+	}
+
+	private Message sale(Long productId, int units, String total) {
+
+		return converter.toMessage(StockChangeEventDTO.builder().productId(productId).productCategory("bebidas")
+				.quantityChanged(units).saleTotal(new BigDecimal(total)).build(), jsonProperties());
+	}
+
+	private static MessageProperties jsonProperties() {
+
+		MessageProperties properties = new MessageProperties();
+		properties.setContentType(MessageProperties.CONTENT_TYPE_JSON);
+		return properties;
+	}
+}
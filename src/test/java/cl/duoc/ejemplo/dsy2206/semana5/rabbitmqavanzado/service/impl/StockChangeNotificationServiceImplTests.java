@@ -0,0 +1,107 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitOperations;
+import org.springframework.amqp.rabbit.core.RabbitOperations.OperationsCallback;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.converter.CompactBinaryMessageConverter;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.dto.StockChangeEventDTO;
+import cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.service.StockChangeObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class StockChangeNotificationServiceImplTests {
+
+	// The broker nacks the first two sends and confirms from then on
+	private static final int NACKS = 2;
+
+	private final AtomicInteger sends = new AtomicInteger();
+
+	@Test
+	void nackedEventIsRetriedWithAsyncPublishing() throws Exception {
+
+		publishThroughNackingBroker(true);
+	}
+
+	@Test
+	void nackedEventIsRetriedWithSyncPublishing() throws Exception {
+
+		publishThroughNackingBroker(false);
+	}
+
+	private void publishThroughNackingBroker(boolean async) throws Exception {
+
+		RabbitStockEventPublisher publisher = nackingPublisher();
+		StockChangeNotificationServiceImpl notificationService = notificationService(publisher, async);
+		notificationService.notifyStockChanges(List.of(StockChangeEventDTO.builder().productId(7L).productName("p7")
+				.quantityChanged(1).newQuantity(9).build()));
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (sends.get() <= NACKS && System.nanoTime() < deadline) {
+			Thread.sleep(10);
+		}
+		notificationService.stopPublisher();
+		publisher.awaitConfirms();
+		assertEquals(NACKS + 1, sends.get());
+		assertEquals(0, publisher.getInFlightCount());
+		assertEquals(0, publisher.getSpilledCount());
+	}
+
+	private RabbitStockEventPublisher nackingPublisher() {
+
+		RabbitOperations operations = mock(RabbitOperations.class);
+		doAnswer(invocation -> {
+			CorrelationData correlation = invocation.getArgument(3);
+			boolean ack = sends.incrementAndGet() > NACKS;
+			correlation.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nacked"));
+			return null;
+		}).when(operations).send(anyString(), anyString(), any(Message.class), any(CorrelationData.class));
+		RabbitTemplate rabbitTemplate = mock(RabbitTemplate.class);
+		when(rabbitTemplate.getMessageConverter()).thenReturn(new CompactBinaryMessageConverter());
+		when(rabbitTemplate.invoke(any())).thenAnswer(invocation -> invocation.<OperationsCallback<?>>getArgument(0).doInRabbit(operations));
+		CachingConnectionFactory connectionFactory = mock(CachingConnectionFactory.class);
+		when(connectionFactory.isPublisherConfirms()).thenReturn(true);
+
+		RabbitStockEventPublisher publisher = new RabbitStockEventPublisher(rabbitTemplate, connectionFactory, new SimpleMeterRegistry(), 10);
+		ReflectionTestUtils.setField(publisher, "stockChangeQueueName", "stock-changes");
+		ReflectionTestUtils.setField(publisher, "maxRetries", 3);
+		ReflectionTestUtils.setField(publisher, "spillCapacity", 10);
+		ReflectionTestUtils.setField(publisher, "retryIntervalMs", 10L);
+		publisher.startRetries();
+		return publisher;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static StockChangeNotificationServiceImpl notificationService(RabbitStockEventPublisher publisher, boolean async)
+			throws IOException {
+
+		ObjectProvider<StockChangeObserver> observers = mock(ObjectProvider.class);
+		when(observers.orderedStream()).thenReturn(Stream.empty());
+		StockChangeNotificationServiceImpl notificationService = new StockChangeNotificationServiceImpl(publisher, observers,
+				new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(notificationService, "notificationsEnabled", true);
+		ReflectionTestUtils.setField(notificationService, "asyncPublishing", async);
+		ReflectionTestUtils.setField(notificationService, "batchSize", 10);
+		ReflectionTestUtils.setField(notificationService, "queueCapacity", 10);
+		notificationService.startPublisher();
+		return notificationService;
+	}
+}
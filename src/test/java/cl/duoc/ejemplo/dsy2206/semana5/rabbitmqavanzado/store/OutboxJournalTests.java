@@ -0,0 +1,106 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OutboxJournalTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void resumesFromCommittedOffsetAcrossSegmentsAfterRestart() throws IOException {
+
+		OutboxJournal journal = new OutboxJournal(tempDir, 1024, 1 << 20);
+		// 100 records of 108 bytes each need more than ten 1 KiB segments
+		for (int i = 0; i < 100; i++) {
+			journal.append(record(i));
+		}
+		OutboxJournal.Batch first = journal.read(journal.committedOffset(), 60);
+		assertEquals(60, first.payloads().size());
+		assertEquals("event-0", text(first.payloads().get(0)));
+		journal.commit(first.endOffset(), 60);
+		journal.close();
+
+		OutboxJournal reopened = new OutboxJournal(tempDir, 1024, 1 << 20);
+		assertEquals(40, reopened.pendingRecords());
+		OutboxJournal.Batch rest = reopened.read(reopened.committedOffset(), 1000);
+		assertEquals(40, rest.payloads().size());
+		assertEquals("event-60", text(rest.payloads().get(0)));
+		assertEquals("event-99", text(rest.payloads().get(39)));
+
+		// Appends continue after the recovered end; delivered segments are gone
+		reopened.append(record(100));
+		assertEquals(41, reopened.read(reopened.committedOffset(), 1000).payloads().size());
+		try (var files = Files.list(tempDir)) {
+			assertTrue(files.filter(file -> file.toString().endsWith(".seg")).count() < 10);
+		}
+	}
+
+	@Test
+	void dropsTornTailOnRecovery() throws IOException {
+
+		OutboxJournal journal = new OutboxJournal(tempDir, 4096, 1 << 20);
+		journal.append(record(1));
+		long end = journal.append(record(2));
+		journal.close();
+
+		// Corrupt the payload of the second record, as if the machine died mid-flush
+		Path segment;
+		try (var files = Files.list(tempDir)) {
+			segment = files.filter(file -> file.toString().endsWith(".seg")).findFirst().orElseThrow();
+		}
+		byte[] bytes = Files.readAllBytes(segment);
+		bytes[(int) end - 1] ^= 0x7f;
+		Files.write(segment, bytes);
+
+		OutboxJournal reopened = new OutboxJournal(tempDir, 4096, 1 << 20);
+		List<byte[]> payloads = reopened.read(reopened.committedOffset(), 10).payloads();
+		assertEquals(1, payloads.size());
+		assertEquals("event-1", text(payloads.get(0)));
+		reopened.append(record(3));
+		assertEquals("event-3", text(reopened.read(reopened.committedOffset(), 10).payloads().get(1)));
+	}
+
+	@Test
+	void rejectsAppendsOnceFullUntilConsumerCommits() throws IOException {
+
+		// Three 1 KiB segments hold 9 records of 108 bytes each
+		OutboxJournal journal = new OutboxJournal(tempDir, 1024, 3 * 1024);
+		for (int i = 0; i < 27; i++) {
+			assertTrue(journal.append(record(i)) > 0);
+		}
+		assertEquals(-1, journal.append(record(27)));
+		assertEquals(27, journal.pendingRecords());
+
+		// Committing past the first segment frees its space
+		OutboxJournal.Batch delivered = journal.read(journal.committedOffset(), 10);
+		journal.commit(delivered.endOffset(), 10);
+		assertTrue(journal.append(record(27)) > 0);
+		List<byte[]> rest = journal.read(journal.committedOffset(), 100).payloads();
+		assertEquals(18, rest.size());
+		assertEquals("event-27", text(rest.get(17)));
+	}
+
+	private static byte[] record(int i) {
+
+		byte[] padded = new byte[100];
+		byte[] text = ("event-" + i).getBytes(StandardCharsets.UTF_8);
+		System.arraycopy(text, 0, padded, 0, text.length);
+		return padded;
+	}
+
+	private static String text(byte[] payload) {
+
+		return new String(payload, StandardCharsets.UTF_8).trim().replace("\0", "");
+	}
+}
@@ -0,0 +1,64 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotCheckpointTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void restoresImageAndLogAfterCompaction() throws IOException {
+
+		StockSnapshotStore store = new OpenAddressingSnapshotStore(16);
+		SnapshotCheckpoint checkpoint = new SnapshotCheckpoint(tempDir);
+		LocalDateTime watermark = LocalDateTime.of(2025, 1, 1, 10, 0);
+
+		// Seed a catalog large enough to trigger a compacted image, then append small deltas
+		for (long id = 1; id <= 100_000; id++) {
+			store.put(id, 50);
+			checkpoint.record(id, 50);
+		}
+		checkpoint.checkpoint(store, watermark);
+		for (int tick = 1; tick <= 5; tick++) {
+			store.put(tick, 50 - tick);
+			checkpoint.record(tick, 50 - tick);
+			checkpoint.checkpoint(store, watermark.plusSeconds(tick));
+		}
+
+		StockSnapshotStore restored = new OpenAddressingSnapshotStore(16);
+		LocalDateTime restoredWatermark = new SnapshotCheckpoint(tempDir).load(restored);
+
+		assertEquals(watermark.plusSeconds(5), restoredWatermark);
+		assertEquals(100_000, restored.size());
+		assertEquals(45, restored.get(5));
+		assertEquals(50, restored.get(99_999));
+	}
+
+	@Test
+	void dropsTornTrailingFrame() throws IOException {
+
+		StockSnapshotStore store = new OpenAddressingSnapshotStore(16);
+		SnapshotCheckpoint checkpoint = new SnapshotCheckpoint(tempDir);
+		LocalDateTime watermark = LocalDateTime.of(2025, 1, 1, 10, 0);
+		store.put(7L, 10);
+		checkpoint.record(7L, 10);
+		checkpoint.checkpoint(store, watermark);
+
+		Files.write(tempDir.resolve("stock-snapshot-0.log"), new byte[] { 0, 0, 0, 40, 1, 2 }, StandardOpenOption.APPEND);
+
+		StockSnapshotStore restored = new OpenAddressingSnapshotStore(16);
+		assertEquals(watermark, new SnapshotCheckpoint(tempDir).load(restored));
+		assertEquals(10, restored.get(7L));
+		assertEquals(1, restored.size());
+	}
+}
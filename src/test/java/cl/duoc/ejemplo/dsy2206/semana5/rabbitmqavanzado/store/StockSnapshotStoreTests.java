@@ -0,0 +1,64 @@
+package cl.duoc.ejemplo.dsy2206.semana5.rabbitmqavanzado.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class StockSnapshotStoreTests {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	void heapStoreMatchesHashMap() {
+
+		assertMatchesHashMap(new OpenAddressingSnapshotStore(16));
+	}
+
+	@Test
+	void offHeapStoreMatchesHashMap() {
+
+		assertMatchesHashMap(new OffHeapSnapshotStore(16, null));
+	}
+
+	@Test
+	void mappedStoreMatchesHashMap() {
+
+		assertMatchesHashMap(new OffHeapSnapshotStore(16, tempDir));
+	}
+
+	@Test
+	void partitionedStoreMatchesHashMap() {
+
+		assertMatchesHashMap(new PartitionedSnapshotStore(4, partition -> new OpenAddressingSnapshotStore(16)));
+	}
+
+	private void assertMatchesHashMap(StockSnapshotStore store) {
+
+		Map<Long, Integer> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 50_000; i++) {
+			long id = random.nextInt(20_000);
+			int quantity = random.nextInt(1_000);
+			Integer previous = expected.put(id, quantity);
+			assertEquals(previous == null ? StockSnapshotStore.MISSING : previous, store.put(id, quantity));
+		}
+		assertEquals(expected.size(), store.size());
+		expected.forEach((id, quantity) -> assertEquals(quantity, store.get(id)));
+		assertEquals(StockSnapshotStore.MISSING, store.get(-1L));
+
+		Map<Long, Integer> visited = new HashMap<>();
+		store.forEach(visited::put);
+		assertEquals(expected, visited);
+
+		store.clear();
+		assertEquals(0, store.size());
+		assertEquals(StockSnapshotStore.MISSING, store.get(0L));
+	}
+}